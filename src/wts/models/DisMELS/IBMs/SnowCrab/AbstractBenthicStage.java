@@ -9,14 +9,13 @@ package wts.models.DisMELS.IBMs.SnowCrab;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.wtstockhausen.utils.RandomNumberGenerator;
-import java.text.DecimalFormat;
+import java.io.IOException;
 import java.util.ArrayList;
 import wts.models.DisMELS.framework.GlobalInfo;
 import wts.models.DisMELS.framework.LHS_Factory;
 import wts.models.DisMELS.framework.LifeStageAttributesInterface;
 import wts.models.DisMELS.framework.LifeStageInterface;
 import wts.models.DisMELS.framework.LifeStageParametersInterface;
-import wts.roms.gis.AlbersNAD83;
 import wts.roms.model.Interpolator3D;
 import wts.roms.model.LagrangianParticle;
 
@@ -24,7 +23,7 @@ import wts.roms.model.LagrangianParticle;
  *
  * @author William Stockhausen
  */
-public abstract class AbstractBenthicStage implements LifeStageInterface {
+public abstract class AbstractBenthicStage implements LifeStageInterface, ReportWriterInterface {
     
     //Static fields
     /* ROMS 3d interpolator object */
@@ -35,7 +34,6 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
     protected static double tolGridEdge = 0.5;
     
     protected static final String cc = ",";
-    protected static final DecimalFormat decFormat = new DecimalFormat("#.#####");
     
     protected static final GlobalInfo globalInfo = GlobalInfo.getInstance();
 
@@ -68,16 +66,16 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
     
     /* the LagrangianParticle */
     protected LagrangianParticle lp = new LagrangianParticle();;
-    /* the spatial track in projected coordinates for the LHS */
-    protected ArrayList<Coordinate> track = new ArrayList<>();
-    /* the spatial track in geopgraphic coordinates for the LHS */
-    protected ArrayList<Coordinate> trackLL = new ArrayList<>();
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
     /* array list for output LHS instances */
     protected ArrayList<LifeStageInterface> output = new ArrayList<>();
     /* the type of LHS instance */
     protected String typeName = null;
     /* id for this instance*/
     protected long id = 0;
+    /* flag indicating instance fields have changed since the attributes were last updated */
+    protected boolean attsDirty = false;
     
     //fields that reflect attribute values
     protected boolean active=false;
@@ -89,6 +87,8 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
     protected double  lon=0;
     protected double  depth=0;
     protected String  gridCellID="";
+    /** packed id of the grid cell (see GridCellID); GridCellID.NONE if gridCellID was set directly */
+    protected long    gridCell=GridCellID.NONE;
     /** total age, in days */
     protected double  age=0;
     /** age in life stage, in days */
@@ -177,9 +177,7 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
      */
     @Override
     public Coordinate getLastPosition(int coordType) {
-        if (coordType==COORDINATE_TYPE_PROJECTED)  return track.get(track.size()-1); else
-        if (coordType==COORDINATE_TYPE_GEOGRAPHIC) return trackLL.get(trackLL.size()-1);
-        return null;
+        return track.getLastPosition(coordType);
     }
     
     /**
@@ -190,10 +188,7 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
      */
     @Override
     public Coordinate[] getTrack(int coordType) {
-        Coordinate[] cv = new Coordinate[1];
-        if (coordType==COORDINATE_TYPE_PROJECTED)  return track.toArray(cv); else
-        if (coordType==COORDINATE_TYPE_GEOGRAPHIC) return trackLL.toArray(cv);
-        return null;
+        return track.getTrack(coordType);
     }
 
     /**
@@ -204,14 +199,7 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
      */
     @Override
     public void startTrack(Coordinate initPos, int coordType) {
-        if (coordType==COORDINATE_TYPE_PROJECTED) {
-            track.clear();
-            track.add(initPos);
-        } else
-        if (coordType==COORDINATE_TYPE_GEOGRAPHIC) {
-            trackLL.clear();
-            trackLL.add(initPos);
-        }    
+        track.startTrack(initPos,coordType);
     }
 
     /**
@@ -222,22 +210,18 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
      */
     @Override
     public String getTrackAsString(int coordType){
-        StringBuffer strb = new StringBuffer();
-        if (coordType==COORDINATE_TYPE_PROJECTED) {
-            for (Coordinate c : track){
-                strb.append(decFormat.format(c.x));strb.append(":");
-                strb.append(decFormat.format(c.y));strb.append(":");
-                strb.append(decFormat.format(c.z));strb.append(";");
-            }
-        } else
-        if (coordType==COORDINATE_TYPE_GEOGRAPHIC) {
-            for (Coordinate c : trackLL){
-                strb.append(decFormat.format(c.x));strb.append(":");
-                strb.append(decFormat.format(c.y));strb.append(":");
-                strb.append(decFormat.format(c.z));strb.append(";");
-            }
-        }
-        return strb.toString();
+        return track.toString(coordType);
+    }
+
+    /**
+     * Writes the track information in string format to an Appendable.
+     * 
+     * @param out - the Appendable to write to
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @throws IOException 
+     */
+    public void writeTrack(Appendable out, int coordType) throws IOException {
+        track.write(out,coordType);
     }
 
     /**
@@ -292,27 +276,17 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
      * Updates both types of tracks (projected and geographic).
      */    
     protected void updateTrack() {
-        double[] dest = AlbersNAD83.transformGtoP(new double[]{lon,lat});
-        Coordinate c = new Coordinate(dest[0],dest[1]);
-        if (writeTracksFlag){
-            //add current location to end of tracks
-            track.add(c);
-            trackLL.add(new Coordinate(lon,lat,-depth));
-        } else {
-            if (track.size()==0) {
-                //add current location to tracks as 1st coordinate
-                track.add(c);
-                trackLL.add(new Coordinate(lon,lat,-depth));
-            } else if (track.size()==1) {
-                //add current location to tracks as 2nd coordinate
-                track.add(c);
-                trackLL.add(new Coordinate(lon,lat,-depth));
-            } else {
-                //replace 2nd coordinate with current location
-                track.set(1, c);
-                trackLL.set(1,new Coordinate(lon,lat,-depth));
-            }
-        }
+        track.update(lon,lat,-depth,writeTracksFlag,getTrackDecimation());
+    }
+
+    /**
+     * Gets the policy used to decimate the full track: the one set for the 
+     * instance's class with TrackDecimation.setForClass().
+     * 
+     * @return - the policy (null to retain every position)
+     */
+    protected TrackDecimation getTrackDecimation() {
+        return TrackDecimation.getForClass(getClass());
     }
 
     /**
@@ -369,25 +343,40 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
     protected void updateAttributes() {
         //note that the following do not need to be updated
         //  id, parentID, origID, startTime, horizType, vertType
-        atts.setValue(AbstractBenthicStageAttributes.PROP_active,active);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_alive,alive);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_attached,attached);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_time,time);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_horizPos1,lon);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_horizPos2,lat);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_vertPos,depth);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_gridCellID,gridCellID);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_age,age);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_ageInStage,ageInStage);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_number,number);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_instar,instar);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_size,size);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_weight,weight);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_shellcond,shellcond);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_shellthick,shellthick);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_salinity,salinity);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_temperature,temperature);
-        atts.setValue(AbstractBenthicStageAttributes.PROP_ph,ph);
+        //  values are written directly to the attribute slots (no key lookups or boxing)
+        atts.setBoolean(AbstractBenthicStageAttributes.B_active,active);
+        atts.setBoolean(AbstractBenthicStageAttributes.B_alive,alive);
+        atts.setBoolean(AbstractBenthicStageAttributes.B_attached,attached);
+        atts.setDouble(AbstractBenthicStageAttributes.D_time,time);
+        atts.setDouble(AbstractBenthicStageAttributes.D_horizPos1,lon);
+        atts.setDouble(AbstractBenthicStageAttributes.D_horizPos2,lat);
+        atts.setDouble(AbstractBenthicStageAttributes.D_vertPos,depth);
+        //the "i_j" String is only built here, from the packed id
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
+        atts.setString(AbstractBenthicStageAttributes.S_gridCellID,gridCellID);
+        atts.setDouble(AbstractBenthicStageAttributes.D_age,age);
+        atts.setDouble(AbstractBenthicStageAttributes.D_ageInStage,ageInStage);
+        atts.setDouble(AbstractBenthicStageAttributes.D_number,number);
+        atts.setInt(AbstractBenthicStageAttributes.I_instar,instar);
+        atts.setDouble(AbstractBenthicStageAttributes.D_size,size);
+        atts.setDouble(AbstractBenthicStageAttributes.D_weight,weight);
+        atts.setDouble(AbstractBenthicStageAttributes.D_shellcond,shellcond);
+        atts.setDouble(AbstractBenthicStageAttributes.D_shellthick,shellthick);
+        atts.setDouble(AbstractBenthicStageAttributes.D_salinity,salinity);
+        atts.setDouble(AbstractBenthicStageAttributes.D_temperature,temperature);
+        atts.setDouble(AbstractBenthicStageAttributes.D_ph,ph);
+        attsDirty = false;
+    }
+    
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. Subclasses should set
+     * attsDirty in step() rather than calling updateAttributes() directly,
+     * so the update is only done when the attributes are actually read 
+     * (reports, transitions, spawning, customizers).
+     */
+    protected final void syncAttributes() {
+        if (attsDirty) updateAttributes();
     }
 
     /**
@@ -405,6 +394,7 @@ public abstract class AbstractBenthicStage implements LifeStageInterface {
         lat        = atts.getValue(AbstractBenthicStageAttributes.PROP_horizPos2,lat);
         depth      = atts.getValue(AbstractBenthicStageAttributes.PROP_vertPos,depth);
         gridCellID = atts.getValue(AbstractBenthicStageAttributes.PROP_gridCellID,gridCellID);
+        gridCell   = GridCellID.parse(gridCellID);
         age        = atts.getValue(AbstractBenthicStageAttributes.PROP_age,age);
         ageInStage = atts.getValue(AbstractBenthicStageAttributes.PROP_ageInStage,ageInStage);
         number     = atts.getValue(AbstractBenthicStageAttributes.PROP_number,number);
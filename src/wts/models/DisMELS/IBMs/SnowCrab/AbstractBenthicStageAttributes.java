@@ -8,6 +8,7 @@
 package wts.models.DisMELS.IBMs.SnowCrab;
 
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.util.*;
 import wts.models.DisMELS.framework.IBMAttributes.*;
 import wts.models.DisMELS.framework.LifeStageAttributesInterface;
@@ -32,18 +33,86 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
     /** Number of attributes defined by this class (including typeName) */
     public static final int numAttributes = 19+8;
     
+    /** slot type codes for the primitive-backed attribute store */
+    protected static final int SLOT_DOUBLE  = 0;
+    protected static final int SLOT_LONG    = 1;
+    protected static final int SLOT_INT     = 2;
+    protected static final int SLOT_BOOLEAN = 3;
+    protected static final int SLOT_STRING  = 4;
+    /** bit shift used to pack the slot type above the slot index */
+    private static final int SLOT_SHIFT = 24;
+    private static final int SLOT_MASK  = (1<<SLOT_SHIFT)-1;
+    
+    /** slot indices for the double-valued attributes (ROMS dates are stored as doubles) */
+    public static final int D_startTime   = 0;
+    public static final int D_time        = 1;
+    public static final int D_horizPos1   = 2;
+    public static final int D_horizPos2   = 3;
+    public static final int D_vertPos     = 4;
+    public static final int D_age         = 5;
+    public static final int D_ageInStage  = 6;
+    public static final int D_number      = 7;
+    public static final int D_size        = 8;
+    public static final int D_weight      = 9;
+    public static final int D_shellcond   = 10;
+    public static final int D_shellthick  = 11;
+    public static final int D_temperature = 12;
+    public static final int D_salinity    = 13;
+    public static final int D_ph          = 14;
+    /** number of double-valued slots defined by this class */
+    public static final int numDoubleSlots = 15;
+    
+    /** slot indices for the long-valued attributes */
+    public static final int L_id       = 0;
+    public static final int L_parentID = 1;
+    public static final int L_origID   = 2;
+    /** number of long-valued slots defined by this class */
+    public static final int numLongSlots = 3;
+    
+    /** slot indices for the int-valued attributes */
+    public static final int I_horizType = 0;
+    public static final int I_vertType  = 1;
+    public static final int I_instar    = 2;
+    /** number of int-valued slots defined by this class */
+    public static final int numIntSlots = 3;
+    
+    /** slot indices for the boolean-valued attributes */
+    public static final int B_active   = 0;
+    public static final int B_alive    = 1;
+    public static final int B_attached = 2;
+    /** number of boolean-valued slots defined by this class */
+    public static final int numBooleanSlots = 3;
+    
+    /** slot indices for the String-valued attributes (other than typeName) */
+    public static final int S_gridCellID = 0;
+    public static final int S_track      = 1;
+    /** number of String-valued slots defined by this class */
+    public static final int numStringSlots = 2;
+    
     protected static final Set<String> keys = new LinkedHashSet<>(32);
     
     /** map to attributes values */
     protected static final Map<String,IBMAttribute> mapAttributes = new HashMap<>(32);
     
+    /** map to thread-safe formats for attribute values */
+    protected static final Map<String,AttributeValueFormat> mapFormats = new HashMap<>(64);
+    
+    /** map from attribute key to packed slot (type and index), resolved once for this class */
+    protected static final Map<String,Integer> mapSlots = new HashMap<>(64);
+    
     /* LHS type name assigned to instance*/
     protected String typeName;
-    /* map of values for attributes defined in the this class (subclasses should add their attribute values to it) */
-    protected Map<String,Object> mapValues;
+    /* map from key to packed slot used by the instance (subclasses that add attributes should replace it) */
+    protected Map<String,Integer> mapSlotsForClass;
+    /* primitive slot stores for attribute values (subclasses that add attributes should extend them) */
+    protected double[]  dSlots;
+    protected long[]    lSlots;
+    protected int[]     iSlots;
+    protected boolean[] bSlots;
+    protected String[]  sSlots;
     
     /**
-     * Utility field used by bound properties.
+     * Utility field used by bound properties (null in headless mode until a listener is added).
      */
     protected PropertyChangeSupport propertySupport;
 
@@ -59,66 +128,104 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      */
     protected AbstractBenthicStageAttributes(String typeName) {
         this.typeName = typeName;
-        propertySupport =  new PropertyChangeSupport(this);
+        if (!HeadlessMode.isHeadless()) propertySupport =  new PropertyChangeSupport(this);
         if (mapAttributes.isEmpty()){
             //assign static-level attributes information for this class
             String key;
             key = PROP_typeName;   keys.add(key); mapAttributes.put(key,new IBMAttributeString(key,"typeName"));
-            key = PROP_id;         keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"id"));
-            key = PROP_parentID;   keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"parentID"));
-            key = PROP_origID;     keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"origID"));
-            key = PROP_startTime;  keys.add(key); mapAttributes.put(key,new IBMAttributeROMSDate(key,"startTime"));
-            key = PROP_time;       keys.add(key); mapAttributes.put(key,new IBMAttributeROMSDate(key,"time"));
-            key = PROP_horizType;  keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"horizType"));
-            key = PROP_vertType;   keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"vertType"));
-            key = PROP_horizPos1;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"horizPos1"));
-            key = PROP_horizPos2;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"horizPos2"));
-            key = PROP_vertPos;    keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"vertPos"));
-            key = PROP_gridCellID; keys.add(key); mapAttributes.put(key,new IBMAttributeString(key,"gridCellID"));
-            key = PROP_track;      keys.add(key); mapAttributes.put(key,new IBMAttributeString(key,"track"));
-            key = PROP_active;     keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"active"));
-            key = PROP_alive;      keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"alive"));
-            key = PROP_attached;   keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"attached"));
-            key = PROP_age;        keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"age"));
-            key = PROP_ageInStage; keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"ageInStage"));
-            key = PROP_number;     keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"number"));
-            key = PROP_instar;     keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"instar"));
-            key = PROP_size;       keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"size"));
-            key = PROP_weight;     keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"weight"));
-            key = PROP_shellcond;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"shellcondition"));
-            key = PROP_shellthick; keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"shellthickness"));
-            key = PROP_temperature;keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"temperature"));
-            key = PROP_salinity;   keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"salinity"));
-            key = PROP_ph;         keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"pH"));
+            key = PROP_id;         keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"id"));                  mapSlots.put(key,packSlot(SLOT_LONG,L_id));
+            key = PROP_parentID;   keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"parentID"));            mapSlots.put(key,packSlot(SLOT_LONG,L_parentID));
+            key = PROP_origID;     keys.add(key); mapAttributes.put(key,new IBMAttributeLong(key,"origID"));              mapSlots.put(key,packSlot(SLOT_LONG,L_origID));
+            key = PROP_startTime;  keys.add(key); mapAttributes.put(key,new IBMAttributeROMSDate(key,"startTime"));       mapSlots.put(key,packSlot(SLOT_DOUBLE,D_startTime));
+            key = PROP_time;       keys.add(key); mapAttributes.put(key,new IBMAttributeROMSDate(key,"time"));            mapSlots.put(key,packSlot(SLOT_DOUBLE,D_time));
+            key = PROP_horizType;  keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"horizType"));        mapSlots.put(key,packSlot(SLOT_INT,I_horizType));
+            key = PROP_vertType;   keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"vertType"));         mapSlots.put(key,packSlot(SLOT_INT,I_vertType));
+            key = PROP_horizPos1;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"horizPos1"));         mapSlots.put(key,packSlot(SLOT_DOUBLE,D_horizPos1));
+            key = PROP_horizPos2;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"horizPos2"));         mapSlots.put(key,packSlot(SLOT_DOUBLE,D_horizPos2));
+            key = PROP_vertPos;    keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"vertPos"));           mapSlots.put(key,packSlot(SLOT_DOUBLE,D_vertPos));
+            key = PROP_gridCellID; keys.add(key); mapAttributes.put(key,new IBMAttributeString(key,"gridCellID"));        mapSlots.put(key,packSlot(SLOT_STRING,S_gridCellID));
+            key = PROP_track;      keys.add(key); mapAttributes.put(key,new IBMAttributeString(key,"track"));             mapSlots.put(key,packSlot(SLOT_STRING,S_track));
+            key = PROP_active;     keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"active"));           mapSlots.put(key,packSlot(SLOT_BOOLEAN,B_active));
+            key = PROP_alive;      keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"alive"));            mapSlots.put(key,packSlot(SLOT_BOOLEAN,B_alive));
+            key = PROP_attached;   keys.add(key); mapAttributes.put(key,new IBMAttributeBoolean(key,"attached"));         mapSlots.put(key,packSlot(SLOT_BOOLEAN,B_attached));
+            key = PROP_age;        keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"age"));               mapSlots.put(key,packSlot(SLOT_DOUBLE,D_age));
+            key = PROP_ageInStage; keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"ageInStage"));        mapSlots.put(key,packSlot(SLOT_DOUBLE,D_ageInStage));
+            key = PROP_number;     keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"number"));            mapSlots.put(key,packSlot(SLOT_DOUBLE,D_number));
+            key = PROP_instar;     keys.add(key); mapAttributes.put(key,new IBMAttributeInteger(key,"instar"));           mapSlots.put(key,packSlot(SLOT_INT,I_instar));
+            key = PROP_size;       keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"size"));              mapSlots.put(key,packSlot(SLOT_DOUBLE,D_size));
+            key = PROP_weight;     keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"weight"));            mapSlots.put(key,packSlot(SLOT_DOUBLE,D_weight));
+            key = PROP_shellcond;  keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"shellcondition"));    mapSlots.put(key,packSlot(SLOT_DOUBLE,D_shellcond));
+            key = PROP_shellthick; keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"shellthickness"));    mapSlots.put(key,packSlot(SLOT_DOUBLE,D_shellthick));
+            key = PROP_temperature;keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"temperature"));       mapSlots.put(key,packSlot(SLOT_DOUBLE,D_temperature));
+            key = PROP_salinity;   keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"salinity"));          mapSlots.put(key,packSlot(SLOT_DOUBLE,D_salinity));
+            key = PROP_ph;         keys.add(key); mapAttributes.put(key,new IBMAttributeDouble(key,"pH"));                mapSlots.put(key,packSlot(SLOT_DOUBLE,D_ph));
+            for (String k: keys) mapFormats.put(k,AttributeValueFormat.getInstance(mapAttributes.get(k)));
         }
         //assign instance-level attributes values for this class
-        mapValues = new HashMap<>(2*numAttributes);
-        mapValues.put(PROP_id,        new Long(-1));
-        mapValues.put(PROP_parentID,  new Long(-1));
-        mapValues.put(PROP_origID,    new Long(-1));
-        mapValues.put(PROP_startTime, new Double(0));
-        mapValues.put(PROP_time,      new Double(0));
-        mapValues.put(PROP_horizType, new Integer(0));
-        mapValues.put(PROP_vertType,  new Integer(0));
-        mapValues.put(PROP_horizPos1, new Double(0));
-        mapValues.put(PROP_horizPos2, new Double(0));
-        mapValues.put(PROP_vertPos,   new Double(0));
-        mapValues.put(PROP_gridCellID,"");
-        mapValues.put(PROP_track,     "");
-        mapValues.put(PROP_active,    false);
-        mapValues.put(PROP_alive,     true);
-        mapValues.put(PROP_attached,  false);
-        mapValues.put(PROP_age,       new Double(0));
-        mapValues.put(PROP_ageInStage,new Double(0));
-        mapValues.put(PROP_number,    new Double(1));
-        mapValues.put(PROP_instar,     new Integer(0));
-        mapValues.put(PROP_size,       new Double(0));
-        mapValues.put(PROP_weight,     new Double(0));
-        mapValues.put(PROP_shellcond,  new Double(-1));
-        mapValues.put(PROP_shellthick, new Double(-1));
-        mapValues.put(PROP_temperature,new Double(-1));
-        mapValues.put(PROP_salinity,   new Double(-1));
-        mapValues.put(PROP_ph,         new Double(0));
+        mapSlotsForClass = mapSlots;
+        dSlots = new double[numDoubleSlots];
+        lSlots = new long[numLongSlots];
+        iSlots = new int[numIntSlots];
+        bSlots = new boolean[numBooleanSlots];
+        sSlots = new String[numStringSlots];
+        lSlots[L_id]          = -1;
+        lSlots[L_parentID]    = -1;
+        lSlots[L_origID]      = -1;
+        sSlots[S_gridCellID]  = "";
+        sSlots[S_track]       = "";
+        bSlots[B_alive]       = true;
+        dSlots[D_number]      = 1;
+        dSlots[D_shellcond]   = -1;
+        dSlots[D_shellthick]  = -1;
+        dSlots[D_temperature] = -1;
+        dSlots[D_salinity]    = -1;
+    }
+    
+    /**
+     * Packs a slot type and index into a single int.
+     * 
+     * @param type  - slot type (SLOT_DOUBLE, SLOT_LONG, SLOT_INT, SLOT_BOOLEAN or SLOT_STRING)
+     * @param index - index into the corresponding slot store
+     * @return - the packed slot
+     */
+    protected static int packSlot(int type, int index){
+        return (type<<SLOT_SHIFT)|index;
+    }
+    
+    /**
+     * Extends the instance slot stores to hold attributes added by a subclass.
+     * Subclasses that add attributes should build a static key-to-slot map (starting 
+     * from mapSlots and using indices beyond numDoubleSlots, etc.) once, then call 
+     * this from their finishInstantiation() method.
+     * 
+     * @param classSlots - key-to-slot map for the subclass
+     * @param nD - total number of double slots
+     * @param nL - total number of long slots
+     * @param nI - total number of int slots
+     * @param nB - total number of boolean slots
+     * @param nS - total number of String slots
+     */
+    protected void extendSlots(Map<String,Integer> classSlots, int nD, int nL, int nI, int nB, int nS){
+        mapSlotsForClass = classSlots;
+        if (nD>dSlots.length) dSlots = Arrays.copyOf(dSlots,nD);
+        if (nL>lSlots.length) lSlots = Arrays.copyOf(lSlots,nL);
+        if (nI>iSlots.length) iSlots = Arrays.copyOf(iSlots,nI);
+        if (nB>bSlots.length) bSlots = Arrays.copyOf(bSlots,nB);
+        if (nS>sSlots.length) sSlots = Arrays.copyOf(sSlots,nS);
+    }
+    
+    /**
+     * Copies all attribute values from another instance of the same class 
+     * directly between the slot stores.  No property change events are fired.
+     * 
+     * @param src - the instance to copy from
+     */
+    protected void copySlotsFrom(AbstractBenthicStageAttributes src){
+        System.arraycopy(src.dSlots,0,dSlots,0,Math.min(dSlots.length,src.dSlots.length));
+        System.arraycopy(src.lSlots,0,lSlots,0,Math.min(lSlots.length,src.lSlots.length));
+        System.arraycopy(src.iSlots,0,iSlots,0,Math.min(iSlots.length,src.iSlots.length));
+        System.arraycopy(src.bSlots,0,bSlots,0,Math.min(bSlots.length,src.bSlots.length));
+        System.arraycopy(src.sSlots,0,sSlots,0,Math.min(sSlots.length,src.sSlots.length));
     }
 
     @Override
@@ -250,7 +357,7 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      */
     @Override
     public ArrayList getArrayList() {
-        ArrayList a = new ArrayList(mapValues.size());
+        ArrayList a = new ArrayList(keys.size());
         a.add(typeName);
         Iterator<String> it = keys.iterator();
         it.next();//skip PROP_typeName
@@ -259,18 +366,41 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
     }
     
     /**
-     * Sets the value for the mapValues object indicated by the key.
+     * Sets the value for the attribute indicated by the key.
+     * Numeric values are converted to the slot type for the attribute.
+     * String-valued attributes may be set to null, but numeric and boolean 
+     * attributes are stored as primitives and cannot.
      * This overrides the superclass method to provide property change support.
      * 
      * @param key   - String giving key name
      * @param value - Object to be set as value
+     * @throws IllegalArgumentException if value is null for a numeric or boolean 
+     *                                   attribute, or is not of the attribute's type
      */
     @Override
     public void setValue(String key, Object value) {
-        if (mapValues.containsKey(key)) {
-            Object old = mapValues.get(key);
-            Object val = mapValues.put(key,value);
-            propertySupport.firePropertyChange(key,old,val);
+        Integer slot = mapSlotsForClass.get(key);
+        if (slot!=null) {
+            int idx = slot&SLOT_MASK;
+            int type = slot>>SLOT_SHIFT;
+            boolean ok;
+            switch (type) {
+                case SLOT_BOOLEAN: ok = (value instanceof Boolean);              break;
+                case SLOT_STRING:  ok = (value==null)||(value instanceof String); break;
+                default:           ok = (value instanceof Number);
+            }
+            if (!ok) throw new IllegalArgumentException("Cannot set attribute '"+key+"' to "+
+                            ((value==null) ? "null" : "a "+value.getClass().getSimpleName()+" value"));
+            boolean fire = !HeadlessMode.suppressEvent(propertySupport);
+            Object old = fire ? getValue(key) : null;
+            switch (type) {
+                case SLOT_DOUBLE:  dSlots[idx] = ((Number) value).doubleValue(); break;
+                case SLOT_LONG:    lSlots[idx] = ((Number) value).longValue();   break;
+                case SLOT_INT:     iSlots[idx] = ((Number) value).intValue();    break;
+                case SLOT_BOOLEAN: bSlots[idx] = (Boolean) value;                break;
+                case SLOT_STRING:  sSlots[idx] = (String) value;                 break;
+            }
+            if (fire&&(propertySupport!=null)) propertySupport.firePropertyChange(key,old,value);
         }
     }
 
@@ -279,6 +409,7 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      * @param l The listener to add.
      */
     public void addPropertyChangeListener(java.beans.PropertyChangeListener l) {
+        if (propertySupport==null) propertySupport = new PropertyChangeSupport(this);
         propertySupport.addPropertyChangeListener(l);
     }
 
@@ -287,7 +418,7 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      * @param l The listener to remove.
      */
     public void removePropertyChangeListener(java.beans.PropertyChangeListener l) {
-        propertySupport.removePropertyChangeListener(l);
+        if (propertySupport!=null) propertySupport.removePropertyChangeListener(l);
     }
     
     @Override
@@ -350,14 +481,33 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      */
     @Override
     public String getCSV() {
-        String str = typeName;
+        StringBuilder strb = new StringBuilder(256);
+        try {
+            writeCSV(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    /**
+     * Writes the CSV representation of the attribute values to an Appendable
+     * (e.g., a reusable StringBuilder or a Writer).
+     * This method should be overriden by subclasses that add additional attributes, 
+     * calling super.writeCSV(out) and then appending the additional field values.
+     * 
+     * @param out - the Appendable to write to
+     * @throws IOException 
+     */
+    public void writeCSV(Appendable out) throws IOException {
+        out.append(typeName);
         Iterator<String> it = keys.iterator();
         it.next();//skip typeName
         while (it.hasNext()) {
             String key = it.next();
-            str = str+cc+getValueAsString(key);
+            out.append(cc);
+            getFormat(key).append(out,getValue(key));
         }
-        return str;
     }
                 
     /**
@@ -373,9 +523,9 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
     @Override
     public String getCSVHeader() {
         Iterator<String> it = keys.iterator();
-        String str = it.next();//typeName
-        while (it.hasNext()) str = str+cc+it.next();
-        return str;
+        StringBuilder strb = new StringBuilder(it.next());//typeName
+        while (it.hasNext()) strb.append(cc).append(it.next());
+        return strb.toString();
     }
                 
     /**
@@ -387,9 +537,9 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
     @Override
     public String getCSVHeaderShortNames() {
         Iterator<String> it = keys.iterator();
-        String str = mapAttributes.get(it.next()).shortName;//this is "typeName"
-        while (it.hasNext())  str = str+cc+mapAttributes.get(it.next()).shortName;
-        return str;
+        StringBuilder strb = new StringBuilder(mapAttributes.get(it.next()).shortName);//this is "typeName"
+        while (it.hasNext()) strb.append(cc).append(mapAttributes.get(it.next()).shortName);
+        return strb.toString();
     }
     
     /**
@@ -426,8 +576,8 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
      */
     @Override
     public void setGeometry(double[] pt) {
-        mapValues.put(PROP_horizPos1, pt[0]);
-        mapValues.put(PROP_horizPos2, pt[1]);
+        dSlots[D_horizPos1] = pt[0];
+        dSlots[D_horizPos2] = pt[1];
     }
 
     
@@ -437,77 +587,103 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
     
     @Override
     public Boolean getValue(String key, Boolean b) {
-        Boolean v = null;
-        try {
-            v = (Boolean) mapValues.get(key);
-        } catch (ClassCastException exc) {}
-        return v;
+        Object v = getValue(key);
+        return (v instanceof Boolean) ? (Boolean) v : null;
     }
 
     @Override
     public Double getValue(String key, Double d) {
-        Double v = null;
-        try {
-            v = (Double) mapValues.get(key);
-        } catch (ClassCastException exc) {}
-        return v;
+        Object v = getValue(key);
+        return (v instanceof Double) ? (Double) v : null;
     }
 
     @Override
     public Integer getValue(String key, Integer i) {
-        Integer v = null;
-        try {
-            v = (Integer) mapValues.get(key);
-        } catch (ClassCastException exc) {}
-        return v;
+        Object v = getValue(key);
+        return (v instanceof Integer) ? (Integer) v : null;
     }
 
     @Override
     public Long getValue(String key, Long l) {
-        Long v = null;
-        try {
-            v = (Long) mapValues.get(key);
-        } catch (ClassCastException exc) {}
-        return v;
+        Object v = getValue(key);
+        return (v instanceof Long) ? (Long) v : null;
     }
 
     @Override
     public String getValue(String key, String s) {
-        String v = null;
-        try {
-            v = (String) mapValues.get(key);
-        } catch (ClassCastException exc) {}
-        return v;
+        Object v = getValue(key);
+        return (v instanceof String) ? (String) v : null;
     }
 
     @Override
     public boolean getValue(String key, boolean b) throws ClassCastException {
-        boolean v = ((Boolean) mapValues.get(key));
-        return v;
+        return bSlots[getSlotIndex(key,SLOT_BOOLEAN)];
     }
 
     @Override
     public double getValue(String key, double d) throws ClassCastException {
-        double v = ((Double) mapValues.get(key));
-        return v;
+        return dSlots[getSlotIndex(key,SLOT_DOUBLE)];
     }
 
     @Override
     public int getValue(String key, int i) throws ClassCastException {
-        int v = ((Integer) mapValues.get(key));
-        return v;
+        return iSlots[getSlotIndex(key,SLOT_INT)];
     }
 
     @Override
     public long getValue(String key, long l) throws ClassCastException {
-        long v = ((Long) mapValues.get(key));
-        return v;
+        return lSlots[getSlotIndex(key,SLOT_LONG)];
     }
 
     @Override
     public Object getValue(String key) {
-        return mapValues.get(key);
+        Integer slot = mapSlotsForClass.get(key);
+        if (slot==null) return null;
+        int idx = slot&SLOT_MASK;
+        switch (slot>>SLOT_SHIFT) {
+            case SLOT_DOUBLE:  return dSlots[idx];
+            case SLOT_LONG:    return lSlots[idx];
+            case SLOT_INT:     return iSlots[idx];
+            case SLOT_BOOLEAN: return bSlots[idx];
+            case SLOT_STRING:  return sSlots[idx];
+        }
+        return null;
     }
+    
+    /**
+     * Returns the index into the slot store of the given type for the key.
+     * 
+     * @param key  - attribute key
+     * @param type - expected slot type
+     * @return - the slot index
+     * @throws ClassCastException if the key is not an attribute of the expected type
+     */
+    private int getSlotIndex(String key, int type) throws ClassCastException {
+        Integer slot = mapSlotsForClass.get(key);
+        if ((slot==null)||((slot>>SLOT_SHIFT)!=type)) 
+            throw new ClassCastException("Attribute '"+key+"' is not stored as the requested type.");
+        return slot&SLOT_MASK;
+    }
+    
+//>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
+//      Slot-indexed accessors for use by the simulation loop.
+//      These do not fire property change events.
+//>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
+    
+    public double getDouble(int slot){return dSlots[slot];}
+    public void setDouble(int slot, double value){dSlots[slot] = value;}
+    
+    public long getLong(int slot){return lSlots[slot];}
+    public void setLong(int slot, long value){lSlots[slot] = value;}
+    
+    public int getInt(int slot){return iSlots[slot];}
+    public void setInt(int slot, int value){iSlots[slot] = value;}
+    
+    public boolean getBoolean(int slot){return bSlots[slot];}
+    public void setBoolean(int slot, boolean value){bSlots[slot] = value;}
+    
+    public String getString(int slot){return sSlots[slot];}
+    public void setString(int slot, String value){sSlots[slot] = value;}
 //    
 //    @Override
 //    public void setValue(String key, boolean value) {
@@ -515,39 +691,91 @@ public abstract class AbstractBenthicStageAttributes implements LifeStageAttribu
 //        setValue(key, v);
 //    }
     
+    /*
+     * The primitive setters write straight into the numeric slots (values are
+     * only boxed to fire property change events); setValue(String,Object) 
+     * is the boxed path.
+     */
+    
     @Override
     public void setValue(String key, double value) {
-        setValue(key,new Double(value));
+        int slot = getNumericSlot(key,"double");
+        if (slot<0) return;
+        boolean fire = !HeadlessMode.suppressEvent(propertySupport);
+        Object old = fire ? getValue(key) : null;
+        int idx = slot&SLOT_MASK;
+        switch (slot>>SLOT_SHIFT) {
+            case SLOT_DOUBLE: dSlots[idx] = value;        break;
+            case SLOT_LONG:   lSlots[idx] = (long) value; break;
+            default:          iSlots[idx] = (int) value;
+        }
+        if (fire) firePropertyChange(key,old);
     }
     
     @Override
     public void setValue(String key, float value) {
-        setValue(key,new Float(value));
+        setValue(key,(double) value);
     }
     
     @Override
     public void setValue(String key, int value) {
-        setValue(key,new Integer(value));
+        setValue(key,(long) value);
     }
     
     @Override
     public void setValue(String key, long value) {
-        setValue(key,new Long(value));
+        int slot = getNumericSlot(key,"long");
+        if (slot<0) return;
+        boolean fire = !HeadlessMode.suppressEvent(propertySupport);
+        Object old = fire ? getValue(key) : null;
+        int idx = slot&SLOT_MASK;
+        switch (slot>>SLOT_SHIFT) {
+            case SLOT_DOUBLE: dSlots[idx] = value;       break;
+            case SLOT_LONG:   lSlots[idx] = value;       break;
+            default:          iSlots[idx] = (int) value;
+        }
+        if (fire) firePropertyChange(key,old);
+    }
+    
+    /**
+     * Returns the packed slot for a numeric attribute.
+     * 
+     * @param key  - attribute key
+     * @param type - name of the value's type (for the error message)
+     * @return - the packed slot, or -1 if the key is not an attribute
+     * @throws IllegalArgumentException if the attribute is not numeric
+     */
+    private int getNumericSlot(String key, String type) throws IllegalArgumentException {
+        Integer slot = mapSlotsForClass.get(key);
+        if (slot==null) return -1;
+        int t = slot>>SLOT_SHIFT;
+        if ((t==SLOT_BOOLEAN)||(t==SLOT_STRING)) 
+            throw new IllegalArgumentException("Cannot set attribute '"+key+"' to a "+type+" value");
+        return slot;
+    }
+    
+    private void firePropertyChange(String key, Object old){
+        if (propertySupport!=null) propertySupport.firePropertyChange(key,old,getValue(key));
+    }
+    
+    /**
+     * Gets the thread-safe format for the attribute identified by the key.
+     * Subclasses that add attributes should override this method.
+     * 
+     * @param key - attribute key
+     * @return - the format
+     */
+    protected AttributeValueFormat getFormat(String key){
+        return mapFormats.get(key);
     }
     
     public String getValueAsString(String key){
-        Object val = getValue(key);
-        IBMAttribute att = mapAttributes.get(key);
-        att.setValue(val);
-        String str = att.getValueAsString();
-        return str;
+        return getFormat(key).format(getValue(key));
     }
     
     public void setValueFromString(String key, String value) throws NumberFormatException {
         if (!key.equals(PROP_typeName)){
-            IBMAttribute att = mapAttributes.get(key);
-            att.parseValue(value);
-            setValue(key,att.getValue());
+            setValue(key,getFormat(key).parse(value));
         }
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * AttributeValueFormat.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.io.IOException;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttribute;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeBoolean;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeDouble;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeInteger;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeLong;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeROMSDate;
+import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeString;
+
+/**
+ * Thread-safe formatter/parser for attribute values of a single type.
+ *
+ * The IBMAttribute instances kept in the static attribute maps hold a mutable
+ * value, so formatting a value by setting it on the shared IBMAttribute (or
+ * parsing a string into it) cannot be done from more than one thread at a time.
+ * Instances of this class hold no per-value state and may be shared freely.
+ * Use getInstance(IBMAttribute) to get the format matching an attribute.
+ *
+ * @author William Stockhausen
+ */
+public abstract class AttributeValueFormat {
+
+    /** format for Double-valued attributes */
+    public static final AttributeValueFormat DOUBLE = new AttributeValueFormat(){
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            out.append(String.valueOf(((Number) value).doubleValue()));
+        }
+        @Override
+        public Object parse(String str) throws NumberFormatException {
+            return Double.valueOf(str.trim());
+        }
+    };
+
+    /** format for Long-valued attributes */
+    public static final AttributeValueFormat LONG = new AttributeValueFormat(){
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            out.append(String.valueOf(((Number) value).longValue()));
+        }
+        @Override
+        public Object parse(String str) throws NumberFormatException {
+            return Long.valueOf(str.trim());
+        }
+    };
+
+    /** format for Integer-valued attributes */
+    public static final AttributeValueFormat INTEGER = new AttributeValueFormat(){
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            out.append(String.valueOf(((Number) value).intValue()));
+        }
+        @Override
+        public Object parse(String str) throws NumberFormatException {
+            return Integer.valueOf(str.trim());
+        }
+    };
+
+    /** format for Boolean-valued attributes */
+    public static final AttributeValueFormat BOOLEAN = new AttributeValueFormat(){
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            out.append(String.valueOf(value));
+        }
+        @Override
+        public Object parse(String str) {
+            return Boolean.valueOf(str.trim());
+        }
+    };
+
+    /** format for String-valued attributes */
+    public static final AttributeValueFormat STRING = new AttributeValueFormat(){
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            if (value!=null) out.append((String) value);
+        }
+        @Override
+        public Object parse(String str) {
+            return str;
+        }
+    };
+
+    /**
+     * Returns the format matching the type of the given attribute.
+     *
+     * @param att - the attribute
+     * @return - the matching format
+     */
+    public static AttributeValueFormat getInstance(IBMAttribute att){
+        if (att instanceof IBMAttributeROMSDate) return new ROMSDateFormat(att.shortName);
+        if (att instanceof IBMAttributeDouble)   return DOUBLE;
+        if (att instanceof IBMAttributeLong)     return LONG;
+        if (att instanceof IBMAttributeInteger)  return INTEGER;
+        if (att instanceof IBMAttributeBoolean)  return BOOLEAN;
+        if (att instanceof IBMAttributeString)   return STRING;
+        //fall back on the value class for any other attribute types
+        Class c = att.getValueClass();
+        if (Double.class.equals(c))  return DOUBLE;
+        if (Long.class.equals(c))    return LONG;
+        if (Integer.class.equals(c)) return INTEGER;
+        if (Boolean.class.equals(c)) return BOOLEAN;
+        return STRING;
+    }
+
+    /**
+     * Appends the formatted value to an Appendable.
+     *
+     * @param out   - the Appendable to write to
+     * @param value - the value to format
+     * @throws IOException
+     */
+    public abstract void append(Appendable out, Object value) throws IOException;
+
+    /**
+     * Parses a value from a String.
+     *
+     * @param str - the String to parse
+     * @return - the value, as an Object of the appropriate class
+     * @throws NumberFormatException
+     */
+    public abstract Object parse(String str) throws NumberFormatException;
+
+    /**
+     * Formats a value as a String.
+     *
+     * @param value - the value to format
+     * @return - the formatted value
+     */
+    public String format(Object value){
+        StringBuilder strb = new StringBuilder(24);
+        try {
+            append(strb,value);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+
+    /**
+     * Format for ROMS date attributes (model time in seconds, written as dates).
+     * The date conversion is defined by IBMAttributeROMSDate, so each thread
+     * formats and parses with its own IBMAttributeROMSDate instance rather
+     * than the shared one in the static attribute map.
+     */
+    public static class ROMSDateFormat extends AttributeValueFormat {
+        private final ThreadLocal<IBMAttributeROMSDate> tlAtt;
+
+        public ROMSDateFormat(final String shortName){
+            tlAtt = new ThreadLocal<IBMAttributeROMSDate>(){
+                @Override
+                protected IBMAttributeROMSDate initialValue(){
+                    return new IBMAttributeROMSDate(shortName,shortName);
+                }
+            };
+        }
+
+        @Override
+        public void append(Appendable out, Object value) throws IOException {
+            IBMAttributeROMSDate att = tlAtt.get();
+            att.setValue(value);
+            out.append(att.getValueAsString());
+        }
+
+        @Override
+        public Object parse(String str) throws NumberFormatException {
+            IBMAttributeROMSDate att = tlAtt.get();
+            att.parseValue(str);
+            return att.getValue();
+        }
+    }
+}
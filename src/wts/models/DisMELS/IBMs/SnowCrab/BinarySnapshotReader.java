@@ -0,0 +1,190 @@
+/*
+ * BinarySnapshotReader.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads snapshots written by BinarySnapshotWriter (see that class for the format).
+ *
+ * @author William Stockhausen
+ */
+public class BinarySnapshotReader {
+
+    /**
+     * A snapshot: the model time and one table per attributes class.
+     */
+    public static class Snapshot {
+        /** model time for the snapshot */
+        public final double time;
+        /** tables in the snapshot */
+        public final List<Table> tables;
+
+        Snapshot(double time, List<Table> tables){
+            this.time = time;
+            this.tables = tables;
+        }
+
+        /**
+         * Gets the table for an attributes class.
+         *
+         * @param className - the (fully-qualified) attributes class name
+         * @return - the table, or null if the snapshot has none for the class
+         */
+        public Table getTable(String className){
+            for (Table t: tables) if (t.className.equals(className)) return t;
+            return null;
+        }
+    }
+
+    /**
+     * A table of attribute values for one attributes class. Each column is
+     * a double[], long[], int[], boolean[] or String[], depending on its type code.
+     */
+    public static class Table {
+        /** attributes class name */
+        public final String className;
+        /** number of rows (individuals) */
+        public final int nRows;
+        /** column keys (typeName first) */
+        public final String[] keys;
+        /** column type codes */
+        public final byte[] types;
+        /** column values */
+        public final Object[] columns;
+
+        Table(String className, int nRows, String[] keys, byte[] types, Object[] columns){
+            this.className = className;
+            this.nRows = nRows;
+            this.keys = keys;
+            this.types = types;
+            this.columns = columns;
+        }
+
+        /**
+         * Gets the column of values for an attribute.
+         *
+         * @param key - the attribute key
+         * @return - the typed array of values, or null if the key is not in the table
+         */
+        public Object getColumn(String key){
+            for (int k=0;k<keys.length;k++) if (keys[k].equals(key)) return columns[k];
+            return null;
+        }
+    }
+
+    private final DataInputStream dis;
+
+    /**
+     * Creates a new reader and checks the file header.
+     *
+     * @param is - the stream to read from
+     * @throws IOException if the stream is not a snapshot file of a supported version
+     */
+    public BinarySnapshotReader(InputStream is) throws IOException {
+        dis = new DataInputStream(new BufferedInputStream(is,1<<16));
+        int magic = dis.readInt();
+        if (magic!=BinarySnapshotWriter.MAGIC)
+            throw new IOException("Not a binary snapshot file.");
+        int version = dis.readInt();
+        if (version>BinarySnapshotWriter.VERSION)
+            throw new IOException("Unsupported binary snapshot version: "+version);
+    }
+
+    /**
+     * Reads the next snapshot.
+     *
+     * @return - the snapshot, or null at the end of the stream
+     * @throws IOException
+     */
+    public Snapshot readSnapshot() throws IOException {
+        double time;
+        try {
+            time = dis.readDouble();
+        } catch (EOFException ex) {
+            return null;
+        }
+        int nTables = dis.readInt();
+        List<Table> tables = new ArrayList<>(nTables);
+        for (int t=0;t<nTables;t++) tables.add(readTable());
+        return new Snapshot(time,tables);
+    }
+
+    private Table readTable() throws IOException {
+        String className = readString();
+        int nRows = dis.readInt();
+        int nCols = dis.readInt();
+        String[] keys  = new String[nCols];
+        byte[]   types = new byte[nCols];
+        for (int k=0;k<nCols;k++){
+            keys[k]  = readString();
+            types[k] = dis.readByte();
+        }
+        Object[] columns = new Object[nCols];
+        for (int k=0;k<nCols;k++){
+            switch (types[k]){
+                case BinarySnapshotWriter.TYPE_DOUBLE: {
+                    double[] v = new double[nRows];
+                    for (int r=0;r<nRows;r++) v[r] = dis.readDouble();
+                    columns[k] = v;
+                    break;
+                }
+                case BinarySnapshotWriter.TYPE_LONG: {
+                    long[] v = new long[nRows];
+                    for (int r=0;r<nRows;r++) v[r] = dis.readLong();
+                    columns[k] = v;
+                    break;
+                }
+                case BinarySnapshotWriter.TYPE_INT: {
+                    int[] v = new int[nRows];
+                    for (int r=0;r<nRows;r++) v[r] = dis.readInt();
+                    columns[k] = v;
+                    break;
+                }
+                case BinarySnapshotWriter.TYPE_BOOLEAN: {
+                    boolean[] v = new boolean[nRows];
+                    for (int r=0;r<nRows;r++) v[r] = dis.readBoolean();
+                    columns[k] = v;
+                    break;
+                }
+                case BinarySnapshotWriter.TYPE_STRING: {
+                    String[] v = new String[nRows];
+                    for (int r=0;r<nRows;r++) v[r] = readString();
+                    columns[k] = v;
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown column type '"+(char)types[k]+"' for "+keys[k]);
+            }
+        }
+        return new Table(className,nRows,keys,types,columns);
+    }
+
+    private String readString() throws IOException {
+        int n = dis.readInt();
+        if (n<0) return null;
+        byte[] b = new byte[n];
+        dis.readFully(b);
+        return new String(b,BinarySnapshotWriter.UTF8);
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        dis.close();
+    }
+}
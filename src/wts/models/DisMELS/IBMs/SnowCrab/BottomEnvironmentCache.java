@@ -0,0 +1,296 @@
+/*
+ * BottomEnvironmentCache.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.Arrays;
+import wts.roms.model.Interpolator3D;
+
+/**
+ * Cache of bottom-layer (K=0) temperature and salinity at grid points, shared
+ * by the individuals of the benthic stages.
+ *
+ * Many benthic individuals sit on the bottom in the same grid cells, so the
+ * same bottom values would otherwise be interpolated over and over each time
+ * step. Values are interpolated at the (integer) grid points the first time they
+ * are needed and kept until the model time (rounded to the nearest second) or
+ * the physical environment changes. The cached values are then used in one of
+ * two ways:
+ * <ul>
+ *   <li>MODE_CELL - the value at the grid point nearest the individual
+ *   (i.e., at the centre of its grid cell);</li>
+ *   <li>MODE_BILINEAR - bilinear interpolation from the values at the four
+ *   surrounding grid points (this reproduces the interpolator's values if it
+ *   interpolates bilinearly in the horizontal).</li>
+ * </ul>
+ * Grid points on land (those for which the land mask set with setLandMask()
+ * returns true, or for which the interpolated values are not finite) are not
+ * used: in MODE_BILINEAR the weights of the remaining grid points are
+ * renormalized, and if none remain (or, in MODE_CELL, if the nearest grid point
+ * is on land) the caller interpolates directly.
+ *
+ * Each thread has its own cache (so lookups take no locks when individuals are
+ * stepped in parallel, at the cost of each thread interpolating the grid points
+ * it needs once per time step). The cached values do not depend on the thread.
+ *
+ * The cache is disabled by default. It is only used for positions exactly
+ * on the bottom (k = 0); see EnvironmentSample.sample(Interpolator3D,double[],int,double).
+ *
+ * @author William Stockhausen
+ */
+public final class BottomEnvironmentCache {
+
+    /** mode using the value at the nearest grid point */
+    public static final int MODE_CELL = 0;
+    /** mode using bilinear interpolation from the surrounding grid points */
+    public static final int MODE_BILINEAR = 1;
+
+    /**
+     * Land mask for grid points.
+     */
+    public interface LandMask {
+        /**
+         * Gets whether a grid point is on land.
+         *
+         * @param i - grid point i index
+         * @param j - grid point j index
+         * @return - true if the grid point is on land
+         */
+        boolean isLand(long i, long j);
+    }
+
+    /** flag to use the cache */
+    private static volatile boolean enabled = false;
+    /** mode for reading values from the cache */
+    private static volatile int mode = MODE_BILINEAR;
+    /** land mask (null to detect land by non-finite values only) */
+    private static volatile LandMask landMask = null;
+    /** generation of the caches (incremented to empty all of them) */
+    private static volatile int generation = 0;
+
+    /** the cache for each thread */
+    private static final ThreadLocal<BottomEnvironmentCache> caches = new ThreadLocal<BottomEnvironmentCache>(){
+        @Override
+        protected BottomEnvironmentCache initialValue(){
+            return new BottomEnvironmentCache();
+        }
+    };
+
+    /** key marking an empty slot (never a packed grid point) */
+    private static final long EMPTY = GridCellID.NONE;
+
+    /* physical environment for the cached values */
+    private Object env = null;
+    /* model time (s, rounded) for the cached values */
+    private long timeKey = Long.MIN_VALUE;
+    /* generation of the cached values */
+    private int gen = -1;
+    /* grid point keys (packed as GridCellID's) */
+    private long[] keys;
+    /* cached values (temperature, salinity) for each key (NaN on land) */
+    private double[] vals;
+    /* number of cached grid points */
+    private int size = 0;
+    /* values at the last grid point looked up */
+    private double nodeT, nodeS;
+
+    private BottomEnvironmentCache(){
+        keys = new long[1024];
+        Arrays.fill(keys,EMPTY);
+        vals = new double[2*keys.length];
+    }
+
+    /**
+     * Sets the flag to use the cache for benthic individuals on the bottom.
+     *
+     * @param b - true to use the cache
+     */
+    public static void setEnabled(boolean b){
+        enabled = b;
+    }
+
+    /**
+     * Gets the flag to use the cache for benthic individuals on the bottom.
+     *
+     * @return - true if the cache is used
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Sets the mode for reading values from the cache.
+     *
+     * @param m - MODE_CELL or MODE_BILINEAR
+     */
+    public static void setMode(int m){
+        if ((m!=MODE_CELL)&&(m!=MODE_BILINEAR))
+            throw new IllegalArgumentException("Unknown bottom cache mode: "+m);
+        mode = m;
+    }
+
+    /**
+     * Gets the mode for reading values from the cache.
+     *
+     * @return - MODE_CELL or MODE_BILINEAR
+     */
+    public static int getMode(){
+        return mode;
+    }
+
+    /**
+     * Sets the land mask used to exclude grid points on land, and empties the cache.
+     *
+     * @param mask - the land mask (null to detect land by non-finite values only)
+     */
+    public static void setLandMask(LandMask mask){
+        landMask = mask;
+        clear();
+    }
+
+    /**
+     * Gets the land mask used to exclude grid points on land.
+     *
+     * @return - the land mask (null if none is set)
+     */
+    public static LandMask getLandMask(){
+        return landMask;
+    }
+
+    /**
+     * Gets bottom temperature and salinity at a position from the cache.
+     *
+     * @param i3d  - the interpolator
+     * @param time - model time (s)
+     * @param pos  - the position (i,j,k), with k = 0
+     * @param ts   - array in which to return temperature and salinity
+     * @return - false if the values could not be obtained from the cache
+     */
+    public static boolean getBottomTS(Interpolator3D i3d, double time, double[] pos, double[] ts){
+        return caches.get().get(i3d,time,pos,ts);
+    }
+
+    /**
+     * Empties the cache (for all threads).
+     */
+    public static synchronized void clear(){
+        generation++;
+    }
+
+    private boolean get(Interpolator3D i3d, double time, double[] pos, double[] ts){
+        try {
+            Object pe = i3d.getPhysicalEnvironment();
+            long tk = Math.round(time);
+            int g = generation;
+            if ((pe!=env)||(tk!=timeKey)||(g!=gen)) reset(pe,tk,g);
+            if (mode==MODE_CELL){
+                if (!getNode(i3d,Math.round(pos[0]),Math.round(pos[1]))) return false;
+                ts[0] = nodeT; ts[1] = nodeS;
+                return true;
+            }
+            long i0 = (long) Math.floor(pos[0]);
+            long j0 = (long) Math.floor(pos[1]);
+            double fi = pos[0]-i0;
+            double fj = pos[1]-j0;
+            double t = 0.0, s = 0.0, wsum = 0.0;
+            //skip grid points with zero weight (e.g., positions exactly on a grid line) or on land
+            double w;
+            w = (1-fi)*(1-fj);
+            if ((w>0)&&getNode(i3d,i0,  j0  )) {t += w*nodeT; s += w*nodeS; wsum += w;}
+            w = fi*(1-fj);
+            if ((w>0)&&getNode(i3d,i0+1,j0  )) {t += w*nodeT; s += w*nodeS; wsum += w;}
+            w = (1-fi)*fj;
+            if ((w>0)&&getNode(i3d,i0,  j0+1)) {t += w*nodeT; s += w*nodeS; wsum += w;}
+            w = fi*fj;
+            if ((w>0)&&getNode(i3d,i0+1,j0+1)) {t += w*nodeT; s += w*nodeS; wsum += w;}
+            if (!(wsum>0)) return false;
+            ts[0] = t/wsum; ts[1] = s/wsum;
+            return true;
+        } catch (RuntimeException ex) {
+            //e.g., grid point outside the grid: let the caller interpolate directly
+            return false;
+        }
+    }
+
+    /**
+     * Gets the values at a grid point into nodeT, nodeS, interpolating and 
+     * caching them if necessary.
+     * 
+     * @return - false if the grid point is on land
+     */
+    private boolean getNode(Interpolator3D i3d, long i, long j){
+        long key = GridCellID.pack(i,j);
+        int slot = find(key);
+        if (keys[slot]!=key){
+            double t = Double.NaN, s = Double.NaN;
+            LandMask lm = landMask;
+            if ((lm==null)||!lm.isLand(i,j)){
+                double[] p = new double[]{i,j,0.0};
+                t = i3d.interpolateTemperature(p);
+                s = i3d.interpolateSalinity(p);
+                if (Double.isInfinite(t)||Double.isInfinite(s)) t = s = Double.NaN;
+            }
+            slot = put(key,t,s);
+        }
+        nodeT = vals[2*slot];
+        nodeS = vals[2*slot+1];
+        return !(Double.isNaN(nodeT)||Double.isNaN(nodeS));
+    }
+
+    private void reset(Object pe, long tk, int g){
+        env = pe;
+        timeKey = tk;
+        gen = g;
+        if (size>0) Arrays.fill(keys,EMPTY);
+        size = 0;
+    }
+
+    private int find(long key){
+        int mask = keys.length-1;
+        int slot = (int)(mix(key)&mask);
+        while ((keys[slot]!=EMPTY)&&(keys[slot]!=key)) slot = (slot+1)&mask;
+        return slot;
+    }
+
+    private int put(long key, double t, double s){
+        int slot = find(key);
+        if (keys[slot]!=key){
+            if (2*(size+1)>keys.length) {
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        vals[2*slot]   = t;
+        vals[2*slot+1] = s;
+        return slot;
+    }
+
+    private void grow(){
+        long[]   oldKeys = keys;
+        double[] oldVals = vals;
+        keys = new long[2*oldKeys.length];
+        Arrays.fill(keys,EMPTY);
+        vals = new double[2*keys.length];
+        for (int k=0;k<oldKeys.length;k++){
+            if (oldKeys[k]!=EMPTY){
+                int slot = find(oldKeys[k]);
+                keys[slot] = oldKeys[k];
+                vals[2*slot]   = oldVals[2*k];
+                vals[2*slot+1] = oldVals[2*k+1];
+            }
+        }
+    }
+
+    private static long mix(long key){
+        key ^= (key>>>33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key>>>33);
+        return key;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * CounterRandom.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import wts.models.DisMELS.framework.GlobalInfo;
+
+/**
+ * Counter-based random numbers for an individual.
+ *
+ * Draws from a shared generator depend on the order in which all individuals
+ * are stepped, so one individual's trajectory cannot be reproduced without
+ * re-running the whole population (in the same order, on the same number of
+ * threads). Here, instead, each random number is a fixed function (the
+ * Philox-4x32-10 block function) of
+ * <ul>
+ *   <li>the run seed (setSeed()),</li>
+ *   <li>the individual's id,</li>
+ *   <li>the model time at which it is drawn (i.e., the time step), and</li>
+ *   <li>the index of the draw made by the individual at that time,</li>
+ * </ul>
+ * so an individual's random numbers can be regenerated in isolation from its id
+ * and the times it was stepped, and drawing involves no shared state (and so
+ * needs no synchronization).
+ *
+ * Each individual has its own instance. Before drawing, the stage positions the
+ * instance at its id and current time with at(id,time); the draw index restarts
+ * at 0 whenever the id or time changes, and otherwise continues, so several
+ * draws at the same time (e.g., in initialize() and then step()) are distinct.
+ *
+ * Counter-based draws are on by default. Set the run seed with setSeed() (it is
+ * 0 otherwise, so every run gives the same random numbers). For comparison with
+ * earlier runs, they can be turned off (setEnabled(false)); computeNormalVariate()
+ * and computeUniformVariate() then draw from StageRandom (the shared generator,
+ * or the thread's stream when stepping in parallel), as before.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class CounterRandom {
+
+    /* Philox-4x32 multipliers and Weyl key increments */
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int  W0 = 0x9E3779B9;
+    private static final int  W1 = 0xBB67AE85;
+    private static final int  ROUNDS = 10;
+    private static final long MASK32 = 0xffffffffL;
+    private static final double TO_DOUBLE = 1.0/(1L<<53);
+
+    /** flag to use counter-based draws */
+    private static volatile boolean enabled = true;
+    /** the run seed */
+    private static volatile long seed = 0L;
+
+    /* id and time (as raw bits) the instance is positioned at */
+    private long id = 0L;
+    private long timeBits = Double.doubleToLongBits(Double.NaN);
+    /* index of the next block for (id,time) */
+    private int block = 0;
+    /* unused 64-bit half of the last block */
+    private long half;
+    private boolean haveHalf = false;
+    /* second normal variate from the last Box-Muller pair */
+    private double spare;
+    private boolean haveSpare = false;
+    /* reusable buffer for the block words */
+    private final int[] x = new int[4];
+
+    /**
+     * Sets the flag to use counter-based draws.
+     *
+     * @param b - true to use counter-based draws
+     */
+    public static void setEnabled(boolean b){
+        enabled = b;
+    }
+
+    /**
+     * Gets the flag to use counter-based draws.
+     *
+     * @return - true if counter-based draws are used
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Sets the run seed.
+     *
+     * @param s - the seed
+     */
+    public static void setSeed(long s){
+        seed = s;
+    }
+
+    /**
+     * Gets the run seed.
+     *
+     * @return - the seed
+     */
+    public static long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Positions the instance at an individual and model time. The draw index is
+     * reset to 0 if either differs from the current position.
+     *
+     * @param id   - the individual's id
+     * @param time - model time (s)
+     * @return - this instance
+     */
+    public CounterRandom at(long id, double time){
+        long tb = Double.doubleToLongBits(time);
+        if ((id!=this.id)||(tb!=timeBits)){
+            this.id  = id;
+            timeBits = tb;
+            block    = 0;
+            haveHalf  = false;
+            haveSpare = false;
+        }
+        return this;
+    }
+
+    /**
+     * Draws a standard normal variate.
+     *
+     * @return - the variate
+     */
+    public double computeNormalVariate(){
+        if (!enabled) return StageRandom.computeNormalVariate(GlobalInfo.getInstance().getRandomNumberGenerator());
+        return nextNormal();
+    }
+
+    /**
+     * Draws a uniform variate on [a,b).
+     *
+     * @param a - lower bound
+     * @param b - upper bound
+     * @return - the variate
+     */
+    public double computeUniformVariate(double a, double b){
+        if (!enabled) return StageRandom.computeUniformVariate(GlobalInfo.getInstance().getRandomNumberGenerator(),a,b);
+        return a+(b-a)*nextUniform();
+    }
+
+    /**
+     * Gets the next 64 counter-based random bits, whether or not counter-based
+     * draws are enabled.
+     *
+     * @return - the bits
+     */
+    public long nextLong(){
+        if (haveHalf){
+            haveHalf = false;
+            return half;
+        }
+        philox(seed,id,timeBits,block++,x);
+        half = ((x[2]&MASK32)<<32)|(x[3]&MASK32);
+        haveHalf = true;
+        return ((x[0]&MASK32)<<32)|(x[1]&MASK32);
+    }
+
+    /**
+     * Gets a counter-based uniform variate on [0,1).
+     *
+     * @return - the variate
+     */
+    public double nextUniform(){
+        return (nextLong()>>>11)*TO_DOUBLE;
+    }
+
+    /**
+     * Gets a counter-based standard normal variate (Box-Muller, so each pair of
+     * variates uses exactly one block).
+     *
+     * @return - the variate
+     */
+    public double nextNormal(){
+        if (haveSpare){
+            haveSpare = false;
+            return spare;
+        }
+        double u = ((nextLong()>>>11)+1)*TO_DOUBLE;//on (0,1]
+        double v = nextUniform();
+        double r = Math.sqrt(-2*Math.log(u));
+        double a = 2*Math.PI*v;
+        spare = r*Math.sin(a);
+        haveSpare = true;
+        return r*Math.cos(a);
+    }
+
+    /**
+     * Computes the Philox-4x32-10 block for a draw. The counter holds the draw
+     * index, the lower 32 bits of the time and the id; the key holds the seed,
+     * with the upper 32 bits of the time folded into its lower half.
+     *
+     * @param seed     - run seed
+     * @param id       - individual id
+     * @param timeBits - model time (raw bits)
+     * @param index    - block index for (id,time)
+     * @return - the 4 random 32-bit words
+     */
+    public static int[] philox(long seed, long id, long timeBits, int index){
+        return philox(seed,id,timeBits,index,new int[4]);
+    }
+
+    /**
+     * Computes the Philox-4x32-10 block for a draw into a buffer.
+     *
+     * @param seed     - run seed
+     * @param id       - individual id
+     * @param timeBits - model time (raw bits)
+     * @param index    - block index for (id,time)
+     * @param out      - buffer for the 4 random 32-bit words
+     * @return - out
+     */
+    public static int[] philox(long seed, long id, long timeBits, int index, int[] out){
+        return philox(index,(int) timeBits,(int) id,(int)(id>>>32),
+                      (int) seed^(int)(timeBits>>>32),(int)(seed>>>32),out);
+    }
+
+    /**
+     * Computes the Philox-4x32-10 block function.
+     *
+     * @param c0 - counter word 0
+     * @param c1 - counter word 1
+     * @param c2 - counter word 2
+     * @param c3 - counter word 3
+     * @param k0 - key word 0
+     * @param k1 - key word 1
+     * @return - the 4 output words
+     */
+    public static int[] philox(int c0, int c1, int c2, int c3, int k0, int k1){
+        return philox(c0,c1,c2,c3,k0,k1,new int[4]);
+    }
+
+    /**
+     * Computes the Philox-4x32-10 block function into a buffer.
+     *
+     * @param c0  - counter word 0
+     * @param c1  - counter word 1
+     * @param c2  - counter word 2
+     * @param c3  - counter word 3
+     * @param k0  - key word 0
+     * @param k1  - key word 1
+     * @param out - buffer for the 4 output words
+     * @return - out
+     */
+    public static int[] philox(int c0, int c1, int c2, int c3, int k0, int k1, int[] out){
+        for (int r=0;r<ROUNDS;r++){
+            long p0 = M0*(c0&MASK32);
+            long p1 = M1*(c2&MASK32);
+            int n0 = ((int)(p1>>>32))^c1^k0;
+            int n2 = ((int)(p0>>>32))^c3^k1;
+            c1 = (int) p1;
+            c3 = (int) p0;
+            c0 = n0;
+            c2 = n2;
+            k0 += W0;
+            k1 += W1;
+        }
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+        return out;
+    }
+}
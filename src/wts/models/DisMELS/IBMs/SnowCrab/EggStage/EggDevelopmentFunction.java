@@ -7,6 +7,9 @@ package wts.models.DisMELS.IBMs.SnowCrab.EggStage;
 import com.wtstockhausen.utils.RandomNumberGenerator;
 import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.PrimitiveIBMFunction;
+import wts.models.DisMELS.IBMs.SnowCrab.StageRandom;
 import wts.models.DisMELS.framework.GlobalInfo;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
@@ -21,6 +24,11 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
  *      useNomT - Boolean - flag to use nominal temperature (instead of in situ T)
  *      nomT    - Double  - nominal temperature to use
  *      sigRate - Double - std. deviation in random component to development ([1/[time])
+ *      useTable - Boolean - flag to use a table of rates (see below)
+ *      minT    - Double  - minimum temperature in rate table
+ *      maxT    - Double  - maximum temperature in rate table
+ *      dT      - Double  - temperature step in rate table
+ *      closedForm - Boolean - flag to allow closed-form integration (see below)
  * Variables:
  *      vars - double[]{dt,z0}.
  *      dt - double - time interval   (hours)
@@ -33,13 +41,29 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
  *      rate  = exp(r0[s0]+tCoeff*T+eps);
  *      z(dt) = z0 + dt*rate;
  *      whwere r0[] is an array of ln-scale development rates at T=0 C.
+ * Rate table:
+ *      If useTable is true, exp(r0[s0]+tCoeff*T) is linearly interpolated from a 
+ *      table over the 19 stages and the temperatures minT, minT+dT, ..., maxT 
+ *      (outside this range it is calculated directly). The random term exp(eps) 
+ *      is always calculated exactly. The maximum relative error of the 
+ *      interpolation is about (tCoeff*dT)^2/8 (e.g., 6e-5 for dT = 0.1 deg C 
+ *      with the default tCoeff); the exact bound is given by getMaxRelativeError().
+ *      The table is rebuilt whenever tCoeff or the table parameters are changed.
+ * Closed form:
+ *      If closedForm is true and sigRate is 0, callers may use advance() and 
+ *      timeToStage() to integrate development exactly over any interval at 
+ *      constant temperature (see usesClosedForm()). The rates used are the 
+ *      same as in calculate() (including the rate table, if used), but are 
+ *      changed at the stage boundaries rather than at the end of each time 
+ *      step, so results differ slightly from stepwise integration. The 
+ *      default is false.
  * 
  * @author William.Stockhausen
  */
 @ServiceProviders(value={
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
-public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGrowthFunctionInterface, PrimitiveIBMFunction {
     
     /** function classification */
     public static final String DEFAULT_type = "Egg development";
@@ -59,6 +83,11 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
             "\n\t*      useNomT - Boolean - flag to use nominal temperature (instead of in situ T)"+
             "\n\t*      nomT    - Double  - nominal temperature to use"+
             "\n\t*      sigRate - Double  - std. deviation in random component to development"+
+            "\n\t*      useTable - Boolean - flag to interpolate exp(r0[s0]+tCoeff*T) from a table"+
+            "\n\t*      minT    - Double  - minimum temperature in rate table"+
+            "\n\t*      maxT    - Double  - maximum temperature in rate table"+
+            "\n\t*      dT      - Double  - temperature step in rate table"+
+            "\n\t*      closedForm - Boolean - flag to allow closed-form integration at constant T"+
             "\n\t* Variables:"+
             "\n\t*      vars - double[]{dt,s0,T}."+
             "\n\t*      dt - double - time interval   ([time])"+
@@ -71,6 +100,8 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
             "\n\t*      rate  = exp(r0[s0]+tCoeff*T+eps)"+
             "\n\t*      s(dt) = z0 + dt*rate+eps;"+
             "\n\t*      whwere r0[] is an array of ln-scale development rates at T=0 C."+
+            "\n\t*      If useTable is true, exp(r0[s0]+tCoeff*T) is linearly interpolated from"+
+            "\n\t*      a table for minT<=T<maxT, with max. relative error ~(tCoeff*dT)^2/8."+
             "\n\t* "+
             "\n\t* author: William.Stockhausen"+
             "\n\t**************************************************************************";
@@ -78,7 +109,7 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
     protected static final RandomNumberGenerator rng = GlobalInfo.getInstance().getRandomNumberGenerator();
 
     /** number of settable parameters */
-    public static final int numParams = 4;
+    public static final int numParams = 9;
     /** number of sub-functions */
     public static final int numSubFuncs = 0;
 
@@ -90,6 +121,16 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
     public static final String PARAM_nomT = "nominal temperature (deg C)";
     /** key to set standard deviation parameter */
     public static final String PARAM_stdvRate = "std. dev. of rate";
+    /** key to set flag to use the rate table */
+    public static final String PARAM_useTable = "use rate table?";
+    /** key to set minimum temperature in the rate table */
+    public static final String PARAM_minT = "rate table min. temperature (deg C)";
+    /** key to set maximum temperature in the rate table */
+    public static final String PARAM_maxT = "rate table max. temperature (deg C)";
+    /** key to set temperature step in the rate table */
+    public static final String PARAM_dT = "rate table temperature step (deg C)";
+    /** key to set flag to allow closed-form integration */
+    public static final String PARAM_closedForm = "integrate in closed form?";
     
     /** value of rate parameter */
     private double tCoeff = 0.2153114;//value from analysis of Blood et al. 2007 results
@@ -99,6 +140,18 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
     private double nomT = 3;
     /** value of standard deviation parameter */
     private double stdvRate = 0;
+    /** value of flag to use the rate table */
+    private boolean useTable = false;
+    /** value of minimum temperature in the rate table */
+    private double minT = -2;
+    /** value of maximum temperature in the rate table */
+    private double maxT = 20;
+    /** value of temperature step in the rate table */
+    private double dT = 0.1;
+    /** value of flag to allow closed-form integration */
+    private boolean closedForm = false;
+    /** the rate table (null if not used) */
+    private RateTable table = null;
     
     /** ln(development rate) for stages 1-19 at T = 0 C. */
     private double[] r0 = new double[]{-3.052159, 
@@ -133,6 +186,16 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
         setParameterValue(key, nomT);
         key = PARAM_stdvRate;addParameter(key,Double.class, "std. dev. in ln-scale development rate");
         setParameterValue(key, stdvRate);
+        key = PARAM_useTable;addParameter(key,Boolean.class, "interpolate development rates from a stage x temperature table?");
+        setParameterValue(key, useTable);
+        key = PARAM_minT;    addParameter(key,Double.class, "minimum temperature in rate table (deg C)");
+        setParameterValue(key, minT);
+        key = PARAM_maxT;    addParameter(key,Double.class, "maximum temperature in rate table (deg C)");
+        setParameterValue(key, maxT);
+        key = PARAM_dT;      addParameter(key,Double.class, "temperature step in rate table (deg C)");
+        setParameterValue(key, dT);
+        key = PARAM_closedForm;addParameter(key,Boolean.class, "integrate development in closed form at constant temperature (if std. dev. is 0)?");
+        setParameterValue(key, closedForm);
     }
     
     @Override
@@ -170,11 +233,152 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
                 case PARAM_stdvRate:
                     stdvRate = ((Double) value).doubleValue();
                     break;
+                case PARAM_useTable:
+                    useTable = ((Boolean) value).booleanValue();
+                    break;
+                case PARAM_minT:
+                    minT     = ((Double) value).doubleValue();
+                    break;
+                case PARAM_maxT:
+                    maxT     = ((Double) value).doubleValue();
+                    break;
+                case PARAM_dT:
+                    dT       = ((Double) value).doubleValue();
+                    break;
+                case PARAM_closedForm:
+                    closedForm = ((Boolean) value).booleanValue();
+                    break;
+            }
+            switch (param) {
+                case PARAM_tCoeff:
+                case PARAM_useTable:
+                case PARAM_minT:
+                case PARAM_maxT:
+                case PARAM_dT:
+                    table = useTable ? new RateTable(r0,tCoeff,minT,maxT,dT) : null;
+                    break;
             }
         }
         return false;
     }
 
+    /**
+     * Gets the maximum relative error in the development rate due to 
+     * interpolation from the rate table.
+     * 
+     * @return - the maximum relative error (0 if the table is not used)
+     */
+    public double getMaxRelativeError(){
+        RateTable tbl = table;
+        return (tbl==null) ? 0.0 : tbl.maxRelErr;
+    }
+
+    /**
+     * Gets whether development is deterministic (no random component), so 
+     * advance() and timeToStage() can be used.
+     * 
+     * @return - true if the std. dev. of the rate is 0
+     */
+    public boolean isDeterministic(){
+        return !(stdvRate>0);
+    }
+
+    /**
+     * Gets whether callers should integrate development in closed form (with 
+     * advance() and timeToStage()) when temperature is constant: i.e., whether 
+     * closed-form integration has been turned on and development is deterministic.
+     * 
+     * @return - the flag
+     */
+    public boolean usesClosedForm(){
+        return closedForm&&!(stdvRate>0);
+    }
+
+    /**
+     * Gets whether the nominal temperature is used instead of in situ temperature.
+     * 
+     * @return - the flag
+     */
+    public boolean usesNominalTemperature(){
+        return useNomT;
+    }
+
+    /**
+     * Advances development over an interval at constant temperature, in closed form.
+     * 
+     * Within each integer stage the development rate exp(r0[s]+tCoeff*T) is 
+     * constant, so development is integrated exactly stage by stage, crossing 
+     * as many stage boundaries as the interval allows. For stages beyond those 
+     * in r0, the rate for the first/last stage is used. The random component of 
+     * the rate is not included (see isDeterministic()). The rates are taken from 
+     * the rate table, if it is used. For dt = one time step this differs from 
+     * calculate() only in that the rate changes at the stage boundaries rather 
+     * than at the end of the time step.
+     * 
+     * @param s0 - development stage at the start of the interval
+     * @param dt - length of the interval in hours (may be negative)
+     * @param T  - temperature (ignored if the nominal temperature is used)
+     * @return   - development stage at the end of the interval
+     */
+    public double advance(double s0, double dt, double T){
+        if (useNomT) T = nomT;
+        double s = s0;
+        double t = dt;
+        if (t>0){
+            while (t>0){
+                double k = Math.floor(s);
+                double rate = getRate((int)k,T);
+                double tb = (k+1-s)/rate;//time to reach next stage
+                if (tb>t) return s+rate*t;
+                s = k+1;
+                t -= tb;
+            }
+        } else {
+            while (t<0){
+                double k = Math.ceil(s)-1;//stage being developed through (backwards)
+                double rate = getRate((int)k,T);
+                double tb = (s-k)/rate;//time to reach start of stage
+                if (tb>-t) return s+rate*t;
+                s = k;
+                t += tb;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Calculates the time needed to develop from one stage to another at 
+     * constant temperature, in closed form (see advance()).
+     * 
+     * @param s0 - starting development stage
+     * @param s1 - ending development stage
+     * @param T  - temperature (ignored if the nominal temperature is used)
+     * @return   - the time in hours (0 if s1 <= s0)
+     */
+    public double timeToStage(double s0, double s1, double T){
+        if (useNomT) T = nomT;
+        double t = 0.0;
+        double s = s0;
+        while (s<s1){
+            double k = Math.floor(s);
+            double e = Math.min(k+1,s1);
+            t += (e-s)/getRate((int)k,T);
+            s = e;
+        }
+        return t;
+    }
+
+    /**
+     * Gets the development rate (per hour) for a stage, without the random component,
+     * from the rate table if it is used (as in calculateDouble()).
+     */
+    private double getRate(int stage, double T){
+        int i = Math.max(0,Math.min(r0.length-1,stage-1));
+        RateTable tbl = table;
+        if (tbl!=null) return tbl.getRate(r0,tCoeff,i,T);
+        return Math.exp(r0[i]+tCoeff*T);
+    }
+
     /**
      * Calculates the value of the function, given the current parameter params 
      * and the input variable.
@@ -187,16 +391,100 @@ public class EggDevelopmentFunction extends AbstractIBMFunction implements IBMGr
      */
     @Override
     public Double calculate(Object vars) {
-        double[] lvars = (double[]) vars;//cast object to required double[]
+        return calculateDouble((double[]) vars);//cast object to required double[]
+    }
+
+    /**
+     * Calculates the value of the function, given the current parameter params 
+     * and the input variable, without boxing the result.
+     * 
+     * @param lvars - the inputs variables, dt s0 and T as a double[].
+     *      dt - time step in hours
+     *      s0 - development stage at t
+     *      T  - temperature
+     * @return     - s[dt], the development stage at t+dt
+     */
+    @Override
+    public double calculateDouble(double[] lvars) {
+        return calculateDouble(lvars,null);
+    }
+
+    /**
+     * Calculates the value of the function, given the current parameter params 
+     * and the input variable, drawing the random factor from an individual's 
+     * counter-based random numbers.
+     * 
+     * @param lvars  - the inputs variables, dt s0 and T as a double[] (see calculateDouble(double[]))
+     * @param random - the individual's random numbers, positioned at its id and time
+     *                 (null to draw from the shared generator)
+     * @return     - s[dt], the development stage at t+dt
+     */
+    public double calculateDouble(double[] lvars, CounterRandom random) {
         int i = 0;
         double dt = lvars[i++];
         double s0 = lvars[i++];
         double T = nomT;
         if (!useNomT) T = lvars[i++];
         double rnd = 0; 
-        if (stdvRate>0) rnd = rng.computeNormalVariate(); 
-        double rate = Math.exp(r0[((int)s0)-1]+tCoeff*T+rnd*stdvRate);
+        if (stdvRate>0) rnd = (random!=null) ? random.computeNormalVariate() : StageRandom.computeNormalVariate(rng); 
+        double rate;
+        RateTable tbl = table;
+        if (tbl!=null) {
+            rate = tbl.getRate(r0,tCoeff,((int)s0)-1,T);
+            if (stdvRate>0) rate *= Math.exp(rnd*stdvRate);
+        } else {
+            rate = Math.exp(r0[((int)s0)-1]+tCoeff*T+rnd*stdvRate);
+        }
         s0 += rate*dt;
         return s0;
     }
+
+    /**
+     * Immutable table of development rates exp(r0[s]+tCoeff*T) by stage and 
+     * temperature, for linear interpolation in temperature.
+     */
+    private static final class RateTable {
+        /** minimum temperature */
+        final double minT;
+        /** temperature step */
+        final double dT;
+        /** number of temperatures */
+        final int nT;
+        /** rates, by stage then temperature */
+        final double[] rates;
+        /** maximum relative error of the interpolated rates */
+        final double maxRelErr;
+
+        RateTable(double[] r0, double tCoeff, double minT, double maxT, double dT){
+            this.minT = minT;
+            this.dT   = dT;
+            nT = Math.max(2,(int)Math.ceil((maxT-minT)/dT-1.0e-9)+1);
+            rates = new double[r0.length*nT];
+            for (int s=0;s<r0.length;s++){
+                for (int k=0;k<nT;k++) rates[s*nT+k] = Math.exp(r0[s]+tCoeff*(minT+k*dT));
+            }
+            //the relative error of linear interpolation of exp(c*T) over an interval of
+            //width dT is largest at f = 1/x-1/(exp(x)-1), with x = c*dT, for every interval
+            double x = Math.abs(tCoeff*dT);
+            if (x>0){
+                double ex = Math.exp(x);
+                double f = 1/x-1/(ex-1);
+                maxRelErr = ((1-f)+f*ex)/Math.exp(f*x)-1;
+            } else {
+                maxRelErr = 0.0;
+            }
+        }
+
+        /**
+         * Gets the rate for stage index s at temperature T, calculating
+         * it directly if T is outside the table.
+         */
+        double getRate(double[] r0, double tCoeff, int s, double T){
+            double x = (T-minT)/dT;
+            if (!(x>=0)||(x>=nT-1)) return Math.exp(r0[s]+tCoeff*T);
+            int k = (int) x;
+            int i = s*nT+k;
+            return rates[i]+(x-k)*(rates[i+1]-rates[i]);
+        }
+    }
 }
@@ -8,17 +8,26 @@
 package wts.models.DisMELS.IBMs.SnowCrab.EggStage;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
-import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
-import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
-import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRate_Houde1989;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.FemaleMultiparous.SpawningQuota;
+import wts.models.DisMELS.IBMs.SnowCrab.FunctionArgs;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
+import wts.models.DisMELS.IBMs.SnowCrab.LHSTrack;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.ReportWriterInterface;
+import wts.models.DisMELS.IBMs.SnowCrab.SolarGeometry;
+import wts.models.DisMELS.IBMs.SnowCrab.TrackDecimation;
+import wts.models.DisMELS.IBMs.SnowCrab.YearDay;
 import wts.models.DisMELS.IBMs.SnowCrab.Zooea1.Zooea1Stage;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 
 /**
@@ -26,7 +35,7 @@ import wts.roms.model.LagrangianParticle;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class EggStage extends AbstractLHS {
+public class EggStage extends AbstractLHS implements ReportWriterInterface {
     
         //Static fields    
             //  Static fields new to this class
@@ -44,13 +53,14 @@ public class EggStage extends AbstractLHS {
                                                                Zooea1Stage.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{};
-    
     //Instance fields
             //  Fields hiding ones from superclass
     /* life stage atrbutes object */
     protected EggStageAttributes atts = null;
     /* life stage parameters object */
     protected EggStageParameters params = null;
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
     
     //  Fields new to class
         //fields that reflect parameter values
@@ -92,6 +102,26 @@ public class EggStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** time (s) at which minDevStage is reached (NaN if not known) */
+    private double timeAtMinDevStage = Double.NaN;
+    /** time (s) at which maxDevStage is exceeded (NaN if not known) */
+    private double timeAtMaxDevStage = Double.NaN;
+    /** time (s) from which development is being integrated in closed form (NaN if it is not) */
+    private double devAnchorTime = Double.NaN;
+    /** development stage at devAnchorTime */
+    private double devAnchorStage = 0;
+    /** temperature at devAnchorTime */
+    private double devAnchorT = Double.NaN;
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** reusable argument buffers for IBM function calls */
+    private FunctionArgs fcnArgs = new FunctionArgs(rand);
+    /** packed id of the grid cell containing the individual (GridCellID.NONE if gridCellID was set directly) */
+    private long gridCell = GridCellID.NONE;
+    /** flag indicating instance fields have changed since the attributes were last updated */
+    private boolean attsDirty = false;
     /** total depth (m) at individual's position */
     private double totalDepth;
     
@@ -103,6 +133,18 @@ public class EggStage extends AbstractLHS {
     private IBMFunctionInterface fcnVM = null; 
     /** IBM function selected for vertical velocity */
     private IBMFunctionInterface fcnVV = null; 
+    /** kernel for the selected development function */
+    private IBMKernels.Growth kernDev = null;
+    /** the selected development function, if it is an EggDevelopmentFunction (otherwise null) */
+    private EggDevelopmentFunction eggDev = null;
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
+    /** kernel for the selected vertical velocity function */
+    private IBMKernels.Speed kernVV = null;
+    /** flag indicating the selected vertical movement function is EggAscensionRate */
+    private boolean useAscension = false;
+    /** flag indicating the selected vertical movement function is DielVerticalMigration_FixedDepthRanges */
+    private boolean useDVM = false;
     
     /** flag to print debugging info */
     public static boolean debug = false;
@@ -138,7 +180,7 @@ public class EggStage extends AbstractLHS {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (EggStageParameters) LHS_Factory.createParameters(typeName);
+        params = (EggStageParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParameters(params);
     }
 
@@ -211,6 +253,7 @@ public class EggStage extends AbstractLHS {
      */
     @Override
     public EggStageAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -387,6 +430,14 @@ public class EggStage extends AbstractLHS {
         fcnMort = params.getSelectedIBMFunctionForCategory(EggStageParameters.FCAT_Mortality);
         fcnVM   = params.getSelectedIBMFunctionForCategory(EggStageParameters.FCAT_VerticalMovement);
         fcnVV   = params.getSelectedIBMFunctionForCategory(EggStageParameters.FCAT_VerticalVelocity);
+        //resolve how the functions are called once, rather than every time step
+        kernDev  = IBMKernels.eggDevelopment(fcnDev);
+        eggDev   = (fcnDev instanceof EggDevelopmentFunction) ? (EggDevelopmentFunction) fcnDev : null;
+        kernMort = IBMKernels.mortality(fcnMort);
+        //only a constant vertical velocity is used for eggs
+        kernVV   = IBMKernels.swimmingSpeed((fcnVV instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction) ? fcnVV : null);
+        useAscension = (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.EggAscensionRate);
+        useDVM   = (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges);
     }
     
     /*
@@ -410,20 +461,18 @@ public class EggStage extends AbstractLHS {
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         EggStage clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone = (EggStage) super.clone();
             clone.setAttributes(atts);//this clones atts
-            clone.setParameters(params);//this clones params
-            clone.lp      = (LagrangianParticle) lp.clone();
-            clone.track   = (ArrayList<Coordinate>) track.clone();
-            clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            setNewInstanceState(clone);
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -431,6 +480,60 @@ public class EggStage extends AbstractLHS {
         
     }
 
+    /**
+     * Creates a batch of new eggs using this (newly-spawned) individual as
+     * the prototype and adds them to a list. 
+     * 
+     * Each egg gets a new id and its own copies of the prototype's attributes 
+     * (with the id updated), Lagrangian particle and track, new instances of the 
+     * other per-individual objects (see setNewInstanceState()), and starts from 
+     * the prototype's instance variables. As with clone(), the eggs share the 
+     * prototype's parameters, IBM functions and kernels, which are not changed 
+     * by individuals, unless parameter sharing is off (see ParameterSnapshots). The prototype's attributes, particle and tracks 
+     * should be set up (as for any spawned individual) before calling this.
+     * 
+     * @param n     - number of eggs to create
+     * @param batch - list to add the eggs to
+     */
+    public void createBatch(int n, List<? super EggStage> batch) {
+        syncAttributes();//make sure attributes are up to date before copying
+        try {
+            for (int i=0;i<n;i++) {
+                EggStage egg = (EggStage) super.clone();//shares params, IBM functions and kernels
+                egg.id      = LHS_Factory.getNewID();
+                egg.atts    = atts.copy();
+                egg.atts.setValue(LifeStageAttributesInterface.PROP_id,egg.id);
+                egg.setAttributesFromSubClass(egg.atts);
+                setNewInstanceState(egg);
+                batch.add(egg);
+            }
+        } catch (CloneNotSupportedException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Gives a shallow copy of this individual (from Object.clone()) its own 
+     * instances of the mutable objects each individual must not share: the 
+     * output list and geographic track list inherited from AbstractLHS, the 
+     * Lagrangian particle and track (copied), and the environment sample, 
+     * random numbers and function arguments (new), and, if parameter sharing 
+     * is off, the parameters and IBM functions (copied). The attributes are 
+     * handled by the callers.
+     * 
+     * @param copy - the copy
+     */
+    private void setNewInstanceState(EggStage copy) {
+        copy.output  = new ArrayList<>();
+        copy.trackLL = new ArrayList<>();
+        copy.lp      = (LagrangianParticle) lp.clone();
+        copy.env     = new EnvironmentSample();
+        copy.rand    = new CounterRandom();
+        copy.fcnArgs = new FunctionArgs(copy.rand);
+        copy.track   = track.copy();
+        if (!ParameterSnapshots.isShared()) copy.setParameters((EggStageParameters) params.clone());//own IBM functions
+    }
+
     /**
      *
      * @param dt - time step in seconds
@@ -441,8 +544,13 @@ public class EggStage extends AbstractLHS {
         double dtp = 0.25*(dt/DAY_SECS);//use 1/4 timestep (converted from sec to d)
         output.clear();
         List<LifeStageInterface> nLHSs=null;
-        if (((ageInStage+dtp)>=minStageDuration)&&(devStage>=minDevStage)) {
+        //minDevStage may be reached within 1/4 timestep if its time is known in advance
+        //(i.e., while development is integrated in closed form)
+        boolean devReady = (devStage>=minDevStage)||
+                           (!Double.isNaN(devAnchorTime)&&((time+0.25*dt)>=timeAtMinDevStage));
+        if (((ageInStage+dtp)>=minStageDuration)&&devReady) {
             if ((numTrans>0)||!isSuperIndividual){
+                if (debug) logger.info("Indiv "+id+" reached min. dev. stage at "+timeAtMinDevStage);
                 nLHSs = createNextLHSs();
                 if (nLHSs!=null) output.addAll(nLHSs);
             }
@@ -482,6 +590,7 @@ public class EggStage extends AbstractLHS {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -549,7 +658,6 @@ public class EggStage extends AbstractLHS {
             lp.setIJK(IJ[0],IJ[1],K);
             //reset track array
             track.clear();
-            trackLL.clear();
             //set horizType to lat/lon and vertType to depth
             atts.setValue(LifeStageAttributesInterface.PROP_horizType,Types.HORIZ_LL);
             atts.setValue(LifeStageAttributesInterface.PROP_vertType,Types.VERT_H);
@@ -603,10 +711,12 @@ public class EggStage extends AbstractLHS {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        if (alive&&(SpawningQuota.getTarget()>0)) SpawningQuota.getInstance().countLiveEgg();//for the live egg target
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -618,7 +728,7 @@ public class EggStage extends AbstractLHS {
     public double[] calcUVW(double[] pos, double dt) {
         //compute vertical velocity
         double w = 0;
-        if (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.EggAscensionRate) {
+        if (useAscension) {
             /**
             * Calculates the value of the function, given the current parameter params 
             * and the input variable.
@@ -630,34 +740,17 @@ public class EggStage extends AbstractLHS {
             *      [3] - temp - water temperature [deg C]
             * @return     - ascension rate [m/s] as a Double 
             */
-            w = (Double) fcnVM.calculate(new double[]{dt,diam,density-rho,temperature});
+            w = FunctionArgs.calculate(fcnVM,fcnArgs.set(dt,diam,density-rho,temperature));
             attached = false;
         } else
-        if (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges) {
+        if (useDVM) {
             //calculate the vertical movement rate
-            if (fcnVV instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction) {
-                /**
-                * @param vars - double[]{dt}.
-                * @return     - movement rate as a Double 
-                */
-                w = (Double) fcnVV.calculate(new double[]{dt});
-            }
+            w = kernVV.calculate(dt,0.0,fcnArgs);
             /**
-            * Compute time of local sunrise, sunset and solar noon (in minutes, UTC) 
-            * for given lon, lat, and time (in Julian day-of-year).
-            *@param lon : longitude of position (deg Greenwich, prime meridian)
-            *@param lat : latitude of position (deg)
-            *@param time : day-of-year (1-366, fractional part indicates time-of-day)
-            *@return double[5] = [0] time of sunrise (min UTC from midnight)
-            *                    [1] time of sunset (min UTC from midnight)
-            *                    [2] time of solarnoon (min UTC from midnight)
-            *                    [3] solar declination angle (deg)
-            *                    [4] solar zenith angle (deg)
-            * If sunrise/sunset=NaN then its either 24-hr day or night 
-            * (if lat*declination>0, it's summer in the hemisphere, hence daytime). 
-            * Alternatively, if the solar zenith angle > 90.833 deg, then it is night.
+            * Light level (90.833 deg minus the solar zenith angle; >= 0 indicates daytime)
+            * from the solar geometry shared by all individuals during the time step.
             */
-            double[] ss = DateTimeFunctions.computeSunriseSunset(lon,lat,globalInfo.getCalendar().getYearDay());
+            double lightLevel = SolarGeometry.getLightLevel(lon,lat,YearDay.getYearDay(time));
             /**
             * @param vars - the inputs variables as a double[] array with elements
             *                  dt          - [0] - integration time step
@@ -669,8 +762,9 @@ public class EggStage extends AbstractLHS {
             *              w        - individual active vertical movement velocity
             *              attached - flag indicating whether individual is attached to bottom(< 0) or not (>0)
             */
-            double td = i3d.interpolateBathymetricDepth(lp.getIJK());
-            double[] res = (double[]) fcnVM.calculate(new double[]{dt,depth,td,w,90.833-ss[4]});
+            env.sample(i3d,pos,EnvironmentSample.BATHYMETRY);//no interpolation if still at the last sampled (i,j)
+            double td = env.bathymetricDepth;
+            double[] res = (double[]) fcnVM.calculate(fcnArgs.set(dt,depth,td,w,lightLevel));
             w = res[0];
             attached = res[1]<0;
             if (attached) pos[2] = 0;//set individual on bottom
@@ -681,8 +775,8 @@ public class EggStage extends AbstractLHS {
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                uv[0] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+                uv[1] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
                 if (debugOps) logger.info("id: "+id+"; r, uv: "+r+", {"+uv[0]+", "+uv[1]+"}\n");
             }
         }
@@ -709,13 +803,37 @@ public class EggStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateStage(double dt) {
-        if (fcnDev instanceof EggDevelopmentFunction){
-            devStage = (Double)fcnDev.calculate(new double[]{dt/HR_SECS,devStage,temperature});
-        } else if (fcnDev instanceof ConstantFunction){
-            double rate = (Double)fcnDev.calculate(null);
-            devStage += rate*dt/DAY_SECS;
+        double s0 = devStage;
+        double t0 = time-dt;//time at start of step
+        if ((eggDev!=null)&&eggDev.usesClosedForm()&&(attached||eggDev.usesNominalTemperature())){
+            //temperature is constant over the time step, so development is integrated 
+            //exactly in closed form from the time at which the temperature last changed
+            //(the anchor), however long the time steps; the times at which minDevStage 
+            //and maxDevStage will be reached are calculated exactly when the anchor is set
+            boolean sameT = eggDev.usesNominalTemperature()||(temperature==devAnchorT);
+            if (Double.isNaN(devAnchorTime)||!sameT){
+                devAnchorTime  = t0;
+                devAnchorStage = s0;
+                devAnchorT     = temperature;
+                if (s0<minDevStage)
+                    timeAtMinDevStage = t0+eggDev.timeToStage(s0,minDevStage,temperature)*HR_SECS;
+                if (s0<=maxDevStage)
+                    timeAtMaxDevStage = t0+eggDev.timeToStage(s0,maxDevStage,temperature)*HR_SECS;
+            }
+            devStage = eggDev.advance(devAnchorStage,(time-devAnchorTime)/HR_SECS,temperature);
+            if (time>timeAtMaxDevStage) devStage = Math.max(devStage,Math.nextUp(maxDevStage));
+        } else {
+            if (!Double.isNaN(devAnchorTime)) dropDevAnchor();//predicted times no longer hold
+            rand.at(id,time);//position the random numbers used by the development function
+            devStage = kernDev.calculate(dt,devStage,temperature,fcnArgs);
+            //interpolate the times within the step
+            if ((s0<minDevStage)&&(devStage>=minDevStage))
+                timeAtMinDevStage = t0+dt*(minDevStage-s0)/(devStage-s0);
+            if ((s0<=maxDevStage)&&(devStage>maxDevStage))
+                timeAtMaxDevStage = t0+dt*(maxDevStage-s0)/(devStage-s0);
         }
         if (devStage>maxDevStage){
+            if (debug) logger.info("Indiv "+id+" exceeded max. dev. stage at "+timeAtMaxDevStage);
             alive = false;
             active = false;
         }
@@ -726,13 +844,7 @@ public class EggStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
-        double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (fcnMort instanceof ConstantMortalityRate){
-            mortalityRate = (Double)fcnMort.calculate(null);
-        } else 
-        if (fcnMort instanceof TemperatureDependentMortalityRate_Houde1989){
-            mortalityRate = (Double)fcnMort.calculate(temperature);//using temperature as covariate for mortality
-        }
+        double mortalityRate = kernMort.calculate(temperature);//in unis of [days]^-1
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
@@ -745,19 +857,21 @@ public class EggStage extends AbstractLHS {
     }
     
     private void updatePosition(double[] pos) {
-        totalDepth = i3d.interpolateBathymetricDepth(pos);
-        depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat        = i3d.interpolateLat(pos);
-        lon        = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        //sample position-derived and environmental fields (reusing the cached horizontal fields)
+        env.sample(i3d,pos,EnvironmentSample.POSITION|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY|EnvironmentSample.RHO);
+        totalDepth = env.bathymetricDepth;
+        depth      = env.depth;
+        lat        = env.lat;
+        lon        = env.lon;
+        gridCell = GridCellID.fromPosition(pos);
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
-        if (i3d.getPhysicalEnvironment().getField("rho")!=null) rho  = i3d.interpolateValue(pos,"rho");
-        else rho = 0.0;
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
+        rho         = env.rho;
     }
 
     @Override
@@ -831,11 +945,105 @@ public class EggStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Gets the last position in the track of the instance.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as Coordinate
+     */
+    @Override
+    public Coordinate getLastPosition(int coordType) {
+        return track.getLastPosition(coordType);
+    }
+    
+    /**
+     * Gets the instance's track.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as Coordinate[]
+     */
+    @Override
+    public Coordinate[] getTrack(int coordType) {
+        return track.getTrack(coordType);
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     * 
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    @Override
+    public void startTrack(Coordinate initPos, int coordType) {
+        track.startTrack(initPos,coordType);
+    }
+
+    /**
+     * Returns the track information in string format.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return 
+     */
+    @Override
+    public String getTrackAsString(int coordType){
+        return track.toString(coordType);
+    }
+
+    /**
+     * Updates both types of tracks (projected and geographic).
+     */    
+    @Override
+    protected void updateTrack() {
+        track.update(lon,lat,-depth,getWriteTracksFlag(),TrackDecimation.getForClass(EggStage.class));
+    }
+
+    /**
+     * Gets the time at which the individual reaches minDevStage (i.e., can 
+     * transition to the next stage). If development is being calculated in 
+     * closed form (the development function's closed-form flag is set, and eggs 
+     * are attached or the nominal temperature is used, without random development), 
+     * this is exact and known in advance (it is recalculated if the temperature 
+     * changes), and transitions are timed by it; otherwise it is interpolated 
+     * within the time step in which minDevStage is reached.
+     * 
+     * @return - the time (s), or NaN if it is not known (yet)
+     */
+    public double getTimeAtMinDevStage(){
+        return timeAtMinDevStage;
+    }
+
+    /**
+     * Gets the time at which the individual exceeds maxDevStage (and dies). 
+     * See getTimeAtMinDevStage().
+     * 
+     * @return - the time (s), or NaN if it is not known (yet)
+     */
+    public double getTimeAtMaxDevStage(){
+        return timeAtMaxDevStage;
+    }
+
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -843,11 +1051,22 @@ public class EggStage extends AbstractLHS {
         return atts.getCSVHeaderShortNames();
     }
     
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. The per-step update
+     * is deferred to here so that it is only done when the attributes are
+     * actually read (reports, transitions, spawning, customizers).
+     */
+    private void syncAttributes() {
+        if (attsDirty) updateAttributes();
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
     @Override
     protected void updateAttributes() {
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
         super.updateAttributes();
         atts.setValue(EggStageAttributes.PROP_density,density);
         atts.setValue(EggStageAttributes.PROP_devStage,devStage);
@@ -855,6 +1074,7 @@ public class EggStage extends AbstractLHS {
         atts.setValue(EggStageAttributes.PROP_rho,rho);
         atts.setValue(EggStageAttributes.PROP_salinity,salinity);
         atts.setValue(EggStageAttributes.PROP_temperature,temperature);
+        attsDirty = false;
     }
 
     /**
@@ -863,12 +1083,25 @@ public class EggStage extends AbstractLHS {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        gridCell = GridCellID.parse(gridCellID);
         density     = atts.getValue(EggStageAttributes.PROP_density,density);
         devStage    = atts.getValue(EggStageAttributes.PROP_devStage,devStage);
         diam        = atts.getValue(EggStageAttributes.PROP_diameter,diam);
         rho         = atts.getValue(EggStageAttributes.PROP_rho,rho);
         salinity    = atts.getValue(EggStageAttributes.PROP_salinity,salinity);
         temperature = atts.getValue(EggStageAttributes.PROP_temperature,temperature);
+        dropDevAnchor();//devStage may have changed
+    }
+
+    /**
+     * Stops integrating development in closed form from the current anchor,
+     * and clears the times at which minDevStage and maxDevStage were predicted
+     * to be reached from it.
+     */
+    private void dropDevAnchor() {
+        devAnchorTime     = Double.NaN;
+        timeAtMinDevStage = Double.NaN;
+        timeAtMaxDevStage = Double.NaN;
     }
 
 }
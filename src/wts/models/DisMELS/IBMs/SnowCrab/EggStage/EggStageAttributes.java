@@ -7,9 +7,11 @@
 
 package wts.models.DisMELS.IBMs.SnowCrab.EggStage;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import wts.models.DisMELS.IBMs.SnowCrab.AttributeValueFormat;
 import wts.models.DisMELS.framework.AbstractLHSAttributes2;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttribute;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeDouble;
@@ -35,6 +37,8 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
     protected static final Set<String> newKeys = new LinkedHashSet<>((int)(2*numNewAttributes));
     protected static final Set<String> allKeys = new LinkedHashSet<>((int)(2*(numAttributes+numNewAttributes)));
     protected static final Map<String,IBMAttribute> mapAllAttributes = new HashMap<>((int)(2*(numAttributes+numNewAttributes)));
+    /** map to thread-safe formats for attribute values */
+    protected static final Map<String,AttributeValueFormat> mapAllFormats = new HashMap<>((int)(2*(numAttributes+numNewAttributes)));
     protected static final String[] aKeys      = new String[numAttributes+numNewAttributes-1];//does not include typeName
     protected static final Class[]  classes    = new Class[numAttributes+numNewAttributes];
     protected static final String[] shortNames = new String[numAttributes+numNewAttributes];
@@ -58,6 +62,26 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
         finishInstantiation();
     }
     
+    /**
+     * Creates a copy of an attributes instance by copying its map of values
+     * in a single pass (the values themselves are immutable).
+     */
+    private EggStageAttributes(EggStageAttributes src) {
+        super(src.typeName);
+        mapValues = new HashMap<>(src.mapValues);
+    }
+    
+    /**
+     * Returns a copy of the instance, made by copying the map of values
+     * directly rather than setting the values one at a time as clone() does.
+     * This is used to create the attributes for batches of eggs.
+     * Any listeners on 'this' are not copied.
+     * @return - the copy.
+     */
+    public EggStageAttributes copy() {
+        return new EggStageAttributes(this);
+    }
+    
     /**
      * Returns a deep copy of the instance.  Values are copied.  
      * Any listeners on 'this' are not(?) copied, so these need to be hooked up.
@@ -100,6 +124,7 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
             Iterator<String> it = allKeys.iterator();
             int j = 0; it.next();//skip typeName
             while (it.hasNext()) aKeys[j++] = it.next();
+            for (String k: allKeys) mapAllFormats.put(k,AttributeValueFormat.getInstance(mapAllAttributes.get(k)));
         }
         //set instance information
         Map<String,Object> tmpMapValues = new HashMap<>((int)(2*(numNewAttributes+numAttributes)));
@@ -147,10 +172,34 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
      */
     @Override
     public String getCSV() {
-        String str = super.getCSV();
-        Iterator<String> it = newKeys.iterator();
-        while (it.hasNext()) str = str+cc+getValueAsString(it.next());
-        return str;
+        StringBuilder strb = new StringBuilder(256);
+        try {
+            writeCSV(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    /**
+     * Writes the CSV representation of the attribute values to an Appendable
+     * (e.g., a reusable StringBuilder or a Writer).
+     * 
+     * The superclass attributes are written here too, in the same format as
+     * AbstractLHSAttributes2.getCSV(), so no intermediate String is created.
+     * 
+     * @param out - the Appendable to write to
+     * @throws IOException 
+     */
+    public void writeCSV(Appendable out) throws IOException {
+        out.append(typeName);
+        Iterator<String> it = allKeys.iterator();
+        it.next();//skip PROP_typeName
+        while (it.hasNext()) {
+            String key = it.next();
+            out.append(cc);
+            mapAllFormats.get(key).append(out,getValue(key));
+        }
     }
                 
     /**
@@ -162,10 +211,9 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
      */
     @Override
     public String getCSVHeader() {
-        String str = super.getCSVHeader();
-        Iterator<String> it = newKeys.iterator();
-        while (it.hasNext()) str = str+cc+it.next();
-        return str;
+        StringBuilder strb = new StringBuilder(super.getCSVHeader());
+        for (String key: newKeys) strb.append(cc).append(key);
+        return strb.toString();
     }
                 
     /**
@@ -176,10 +224,9 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
      */
     @Override
     public String getCSVHeaderShortNames() {
-        String str = super.getCSVHeaderShortNames();
-        Iterator<String> it = newKeys.iterator();
-        while (it.hasNext()) str = str+cc+mapAllAttributes.get(it.next()).shortName;
-        return str;
+        StringBuilder strb = new StringBuilder(super.getCSVHeaderShortNames());
+        for (String key: newKeys) strb.append(cc).append(mapAllAttributes.get(key).shortName);
+        return strb.toString();
     }
 
     /**
@@ -284,19 +331,13 @@ public class EggStageAttributes extends AbstractLHSAttributes2 {
     
     @Override
     public String getValueAsString(String key){
-        Object val = getValue(key);
-        IBMAttribute att = mapAllAttributes.get(key);
-        att.setValue(val);
-        String str = att.getValueAsString();
-        return str;
+        return mapAllFormats.get(key).format(getValue(key));
     }
     
     @Override
     public void setValueFromString(String key, String value) throws NumberFormatException {
         if (!key.equals(PROP_typeName)){
-            IBMAttribute att = mapAllAttributes.get(key);
-            att.parseValue(value);
-            setValue(key,att.getValue());
+            setValue(key,mapAllFormats.get(key).parse(value));
         }
     }
 }
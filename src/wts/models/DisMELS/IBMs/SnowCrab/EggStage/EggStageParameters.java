@@ -20,6 +20,8 @@ import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRa
 import wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges;
 import wts.models.DisMELS.IBMFunctions.Movement.EggAscensionRate;
 import wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction;
+import wts.models.DisMELS.IBMs.SnowCrab.HeadlessMode;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
 import wts.models.DisMELS.framework.AbstractLHSParameters;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMParameter;
@@ -70,6 +72,8 @@ public class EggStageParameters extends AbstractLHSParameters {
     
     /** Utility field used by bound properties.  */
     private transient PropertyChangeSupport propertySupport;
+    /* flag indicating the instance is being filled in as a copy (its edits are not reported to ParameterSnapshots) */
+    private transient boolean copying = false;
     
     /**
      * Creates a new instance of EggStageParameters.
@@ -78,7 +82,7 @@ public class EggStageParameters extends AbstractLHSParameters {
         super("",numParams,numFunctionCats);
         createMapToValues();
         createMapToSelectedFunctions();
-        propertySupport =  new PropertyChangeSupport(this);
+        if (!HeadlessMode.isHeadless()) propertySupport =  new PropertyChangeSupport(this);
     }
     
     /**
@@ -88,7 +92,7 @@ public class EggStageParameters extends AbstractLHSParameters {
         super(typeName,numParams,numFunctionCats);
         createMapToValues();
         createMapToSelectedFunctions();
-        propertySupport =  new PropertyChangeSupport(this);
+        if (!HeadlessMode.isHeadless()) propertySupport =  new PropertyChangeSupport(this);
     }
     
     /**
@@ -166,6 +170,23 @@ public class EggStageParameters extends AbstractLHSParameters {
         return mapOfPotentialFunctionsByCategory.get(cat).get(key);    
     }
 
+    /**
+     * Sets the value of a parameter of an IBM function. Function parameters 
+     * should be edited through this method (rather than on the function returned 
+     * by getIBMFunction()) so that the shared parameters snapshot for the type 
+     * is replaced (see ParameterSnapshots).
+     * 
+     * @param cat   - usage category 
+     * @param key   - function name
+     * @param pKey  - function parameter name
+     * @param value - the new value
+     * @return - true if the value was set
+     */
+    public boolean setFunctionParameter(String cat, String key, String pKey, Object value){
+        if (!copying) ParameterSnapshots.edited(this);
+        return mapOfPotentialFunctionsByCategory.get(cat).get(key).setParameterValue(pKey,value);
+    }
+
     @Override
     public Set<String> getIBMFunctionCategories(){
         return mapOfPotentialFunctionsByCategory.keySet();
@@ -178,6 +199,7 @@ public class EggStageParameters extends AbstractLHSParameters {
     
     @Override
    public void selectIBMFunctionForCategory(String cat, String key){
+        if (!copying) ParameterSnapshots.edited(this);
         IBMFunctionInterface ifi = mapOfPotentialFunctionsByCategory.get(cat).get(key);
         mapOfSelectedFunctionsByCategory.put(cat,ifi);
     }
@@ -197,6 +219,7 @@ public class EggStageParameters extends AbstractLHSParameters {
         EggStageParameters clone = null;
         try {
             clone = (EggStageParameters) super.clone();
+            clone.copying = true;
             for (String pKey: setOfParamKeys) {
                 clone.setValue(pKey,this.getValue(pKey));
             }
@@ -213,7 +236,8 @@ public class EggStageParameters extends AbstractLHSParameters {
                     if (sfi==tfi) clone.selectIBMFunctionForCategory(fcKey, fKey);
                 }
             }
-            clone.propertySupport = new PropertyChangeSupport(clone);
+            clone.copying = false;
+            clone.propertySupport = HeadlessMode.isHeadless() ? null : new PropertyChangeSupport(clone);
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -291,11 +315,16 @@ public class EggStageParameters extends AbstractLHSParameters {
      */
     @Override
     public void setValue(String key, Object value) {
+        if (!copying) ParameterSnapshots.edited(this);
         if (mapParams.containsKey(key)) {
             IBMParameter p = mapParams.get(key);
-            Object old = p.getValue();
-            p.setValue(value);
-            propertySupport.firePropertyChange(key,old,value);
+            if (HeadlessMode.suppressEvent(propertySupport)) {
+                p.setValue(value);//no listeners, so skip the property change
+            } else {
+                Object old = p.getValue();
+                p.setValue(value);
+                if (propertySupport!=null) propertySupport.firePropertyChange(key,old,value);
+            }
         }
     }
 
@@ -304,6 +333,7 @@ public class EggStageParameters extends AbstractLHSParameters {
      * @param l The listener to add.
      */
     public void addPropertyChangeListener(java.beans.PropertyChangeListener l) {
+        if (propertySupport==null) propertySupport = new PropertyChangeSupport(this);
         propertySupport.addPropertyChangeListener(l);
     }
 
@@ -312,6 +342,6 @@ public class EggStageParameters extends AbstractLHSParameters {
      * @param l The listener to remove.
      */
     public void removePropertyChangeListener(java.beans.PropertyChangeListener l) {
-        propertySupport.removePropertyChangeListener(l);
+        if (propertySupport!=null) propertySupport.removePropertyChangeListener(l);
     }
 }
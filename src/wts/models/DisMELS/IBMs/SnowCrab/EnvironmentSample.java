@@ -0,0 +1,158 @@
+/*
+ * EnvironmentSample.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import wts.roms.model.Interpolator3D;
+
+/**
+ * Reusable record of the environment at an individual's position, with caching
+ * of the fields that do not need to be interpolated again. It is filled by 
+ * sample(), which the stages call in place of the separate Interpolator3D calls
+ * they made from updatePosition(), interpolateEnvVars() and calcUVW().
+ *
+ * The fields to fill are selected with a bit mask (e.g., POSITION|TEMPERATURE|SALINITY).
+ * Bathymetric depth, latitude and longitude depend only on the horizontal
+ * position, so they are reused without interpolation while the individual stays
+ * at the same (i,j) position. Whether the physical environment provides "rho"
+ * is checked once per PhysicalEnvironment instance rather than every step.
+ * 
+ * This is a cache, not a fused sampler: Interpolator3D does not expose its 
+ * interpolation weights, so each field that does have to be interpolated 
+ * (depth, temperature, salinity, rho, and the horizontal fields at a new
+ * position) still takes its own Interpolator3D call.
+ *
+ * Each individual should have its own instance; instances are not thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public class EnvironmentSample {
+
+    /** flag for bathymetric depth */
+    public static final int BATHYMETRY  = 1;
+    /** flag for depth (from K) */
+    public static final int DEPTH       = 2;
+    /** flag for latitude */
+    public static final int LAT         = 4;
+    /** flag for longitude */
+    public static final int LON         = 8;
+    /** flag for temperature */
+    public static final int TEMPERATURE = 16;
+    /** flag for salinity */
+    public static final int SALINITY    = 32;
+    /** flag for density (0 if not in the physical environment) */
+    public static final int RHO         = 64;
+    /** flags for the position-derived fields */
+    public static final int POSITION    = BATHYMETRY|DEPTH|LAT|LON;
+    /** flags for the horizontal position-only fields */
+    private static final int HORIZONTAL = BATHYMETRY|LAT|LON;
+
+    /* result of the last check for rho (physical environment, flag) */
+    private static volatile RhoCheck rhoCheck = new RhoCheck(null,false);
+
+    /** bathymetric depth (m) */
+    public double bathymetricDepth = 0;
+    /** depth (m, positive) */
+    public double depth = 0;
+    /** latitude */
+    public double lat = 0;
+    /** longitude */
+    public double lon = 0;
+    /** temperature (deg C) */
+    public double temperature = 0;
+    /** salinity */
+    public double salinity = 0;
+    /** density (kg/m^3) */
+    public double rho = 0;
+
+    /* horizontal position for which the horizontal fields are valid */
+    private double hI = Double.NaN;
+    private double hJ = Double.NaN;
+    /* horizontal fields valid at (hI,hJ) */
+    private int hFields = 0;
+    /* scratch array for bottom temperature and salinity */
+    private final double[] ts = new double[2];
+
+    /**
+     * Samples the requested fields at a position.
+     *
+     * @param i3d    - the interpolator
+     * @param pos    - the position (i,j,k)
+     * @param fields - bit mask of the fields to fill
+     */
+    public void sample(Interpolator3D i3d, double[] pos, int fields){
+        if ((pos[0]!=hI)||(pos[1]!=hJ)){
+            hI = pos[0];
+            hJ = pos[1];
+            hFields = 0;
+        }
+        int need = fields&HORIZONTAL&~hFields;
+        if ((need&BATHYMETRY)!=0) bathymetricDepth = i3d.interpolateBathymetricDepth(pos);
+        if ((need&LAT)!=0)        lat = i3d.interpolateLat(pos);
+        if ((need&LON)!=0)        lon = i3d.interpolateLon(pos);
+        hFields |= need;
+        if ((fields&DEPTH)!=0)       depth       = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
+        if ((fields&TEMPERATURE)!=0) temperature = i3d.interpolateTemperature(pos);
+        if ((fields&SALINITY)!=0)    salinity    = i3d.interpolateSalinity(pos);
+        if ((fields&RHO)!=0)         rho = hasRho(i3d) ? i3d.interpolateValue(pos,"rho") : 0.0;
+    }
+
+    /**
+     * Samples the requested fields at a position, for an individual of a benthic
+     * stage. If the BottomEnvironmentCache is enabled and the position is on the
+     * bottom (k = 0), temperature and salinity are taken from the cache.
+     *
+     * @param i3d    - the interpolator
+     * @param pos    - the position (i,j,k)
+     * @param fields - bit mask of the fields to fill
+     * @param time   - model time (s)
+     */
+    public void sample(Interpolator3D i3d, double[] pos, int fields, double time){
+        if (BottomEnvironmentCache.isEnabled()&&(pos[2]==0.0)&&((fields&(TEMPERATURE|SALINITY))!=0)){
+            if (BottomEnvironmentCache.getBottomTS(i3d,time,pos,ts)){
+                if ((fields&TEMPERATURE)!=0) temperature = ts[0];
+                if ((fields&SALINITY)!=0)    salinity    = ts[1];
+                fields &= ~(TEMPERATURE|SALINITY);
+            }
+        }
+        sample(i3d,pos,fields);
+    }
+
+    /**
+     * Forgets the cached horizontal fields (e.g., if the grid changes).
+     */
+    public void invalidate(){
+        hI = Double.NaN;
+        hJ = Double.NaN;
+        hFields = 0;
+    }
+
+    /**
+     * Determines whether the interpolator's physical environment provides "rho".
+     */
+    private static boolean hasRho(Interpolator3D i3d){
+        Object pe = i3d.getPhysicalEnvironment();
+        RhoCheck chk = rhoCheck;
+        if (pe!=chk.env){
+            chk = new RhoCheck(pe,i3d.getPhysicalEnvironment().getField("rho")!=null);
+            rhoCheck = chk;
+        }
+        return chk.hasRho;
+    }
+
+    /**
+     * Immutable result of checking a physical environment for rho.
+     */
+    private static class RhoCheck {
+        final Object env;
+        final boolean hasRho;
+        RhoCheck(Object env, boolean hasRho){
+            this.env = env;
+            this.hasRho = hasRho;
+        }
+    }
+}
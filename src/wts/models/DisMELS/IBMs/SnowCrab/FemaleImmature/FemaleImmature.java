@@ -8,19 +8,22 @@
 package wts.models.DisMELS.IBMs.SnowCrab.FemaleImmature;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
-import wts.models.DisMELS.IBMFunctions.Growth.ExponentialGrowthFunction;
-import wts.models.DisMELS.IBMFunctions.Growth.LinearGrowthFunction;
-import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
-import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
-import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRate_Houde1989;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.FunctionArgs;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
 import wts.models.DisMELS.IBMs.SnowCrab.FemalePrimiparous.FemalePrimiparous;
+import wts.models.DisMELS.IBMs.SnowCrab.LHSTrack;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.ReportWriterInterface;
+import wts.models.DisMELS.IBMs.SnowCrab.TrackDecimation;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 
 /**
@@ -28,7 +31,7 @@ import wts.roms.model.LagrangianParticle;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class FemaleImmature extends AbstractLHS {
+public class FemaleImmature extends AbstractLHS implements ReportWriterInterface {
     
         //Static fields    
             //  Static fields new to this class
@@ -47,13 +50,14 @@ public class FemaleImmature extends AbstractLHS {
                                                                FemalePrimiparous.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{};
-    
     //Instance fields
             //  Fields hiding ones from superclass
     /* life stage atrbutes object */
     protected FemaleImmatureAttributes atts = null;
     /* life stage parameters object */
     protected FemaleImmatureParameters params = null;
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
     
     //  Fields new to class
         //fields that reflect parameter values
@@ -93,6 +97,18 @@ public class FemaleImmature extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** reusable argument buffers for IBM function calls */
+    private FunctionArgs fcnArgs = new FunctionArgs(rand);
+    /** packed id of the grid cell containing the individual (GridCellID.NONE if gridCellID was set directly) */
+    private long gridCell = GridCellID.NONE;
+    /** grid position (i,j,k) at which the position-derived values were last computed */
+    private double posI = Double.NaN, posJ = Double.NaN, posK = Double.NaN;
+    /** flag indicating instance fields have changed since the attributes were last updated */
+    private boolean attsDirty = false;
     /** total depth (m) at individual's position */
     private double totalDepth;
     
@@ -102,6 +118,12 @@ public class FemaleImmature extends AbstractLHS {
     private IBMFunctionInterface fcnMort = null; 
     /** IBM function selected for horizontal velocity */
     private IBMFunctionInterface fcnSS = null; 
+    /** kernel for the selected growth function */
+    private IBMKernels.Growth kernGrowth = null;
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
+    /** kernel for the selected swimming speed function */
+    private IBMKernels.Speed kernSS = null;
     
     /** logger for class */
     private static final Logger logger = Logger.getLogger(FemaleImmature.class.getName());
@@ -135,7 +157,7 @@ public class FemaleImmature extends AbstractLHS {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (FemaleImmatureParameters) LHS_Factory.createParameters(typeName);
+        params = (FemaleImmatureParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParameters(params);
     }
 
@@ -208,6 +230,7 @@ public class FemaleImmature extends AbstractLHS {
      */
     @Override
     public FemaleImmatureAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -378,6 +401,10 @@ public class FemaleImmature extends AbstractLHS {
         fcnGrowth  = params.getSelectedIBMFunctionForCategory(FemaleImmatureParameters.FCAT_Growth);
         fcnMort    = params.getSelectedIBMFunctionForCategory(FemaleImmatureParameters.FCAT_Mortality);
         fcnSS      = params.getSelectedIBMFunctionForCategory(FemaleImmatureParameters.FCAT_SwimmingSpeed);
+        //resolve how the functions are called once, rather than every time step
+        kernGrowth = IBMKernels.growth(fcnGrowth);
+        kernMort   = IBMKernels.mortality(fcnMort);
+        kernSS     = IBMKernels.swimmingSpeed(fcnSS);
     }
     
     /*
@@ -403,20 +430,23 @@ public class FemaleImmature extends AbstractLHS {
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         FemaleImmature clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone = (FemaleImmature) super.clone();
             clone.setAttributes(atts);//this clones atts
-            clone.setParameters(params);//this clones params
+            if (!ParameterSnapshots.isShared()) clone.setParameters((FemaleImmatureParameters) params.clone());//own IBM functions
             clone.lp      = (LagrangianParticle) lp.clone();
-            clone.track   = (ArrayList<Coordinate>) track.clone();
-            clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.env     = new EnvironmentSample();
+            clone.rand    = new CounterRandom();
+            clone.fcnArgs = new FunctionArgs(clone.rand);
+            clone.track   = track.copy();
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -475,6 +505,7 @@ public class FemaleImmature extends AbstractLHS {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -542,7 +573,6 @@ public class FemaleImmature extends AbstractLHS {
             lp.setIJK(IJ[0],IJ[1],K);
             //reset track array
             track.clear();
-            trackLL.clear();
             //set horizType to lat/lon and vertType to depth
             atts.setValue(LifeStageAttributesInterface.PROP_horizType,Types.HORIZ_LL);
             atts.setValue(LifeStageAttributesInterface.PROP_vertType,Types.VERT_H);
@@ -598,10 +628,11 @@ public class FemaleImmature extends AbstractLHS {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -612,38 +643,7 @@ public class FemaleImmature extends AbstractLHS {
      */
     public double[] calcUV(double[] pos, double dt) {
         //compute swimming speed
-        double s = 0;
-        if (fcnSS instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.PowerLawSwimmingSpeedFunction) {
-            /**
-            * @param vars - the inputs variables as a double[]{dt,z}.
-            *      dt - [0] - integration time step
-            *      z  - [1] - size of individual
-            */
-            s = (Double) fcnSS.calculate(new double[]{dt,size});
-        } else
-        if (fcnSS instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction) {
-            /**
-            * @param vars - double[]{dt}.
-            * @return     - movement rate as a Double 
-            */
-            s = (Double) fcnSS.calculate(new double[]{dt});
-        }
-        /**
-        * Compute time of local sunrise, sunset and solar noon (in minutes, UTC) 
-        * for given lon, lat, and time (in Julian day-of-year).
-        *@param lon : longitude of position (deg Greenwich, prime meridian)
-        *@param lat : latitude of position (deg)
-        *@param time : day-of-year (1-366, fractional part indicates time-of-day)
-        *@return double[5] = [0] time of sunrise (min UTC from midnight)
-        *                    [1] time of sunset (min UTC from midnight)
-        *                    [2] time of solarnoon (min UTC from midnight)
-        *                    [3] solar declination angle (deg)
-        *                    [4] solar zenith angle (deg)
-        * If sunrise/sunset=NaN then its either 24-hr day or night 
-        * (if lat*declination>0, it's summer in the hemisphere, hence daytime). 
-        * Alternatively, if the solar zenith angle > 90.833 deg, then it is night.
-        */
-        double[] ss = DateTimeFunctions.computeSunriseSunset(lon,lat,globalInfo.getCalendar().getYearDay());
+        double s = kernSS.calculate(dt,size,fcnArgs);
         
         //calculate horizontal movement
         double[] uv = {0.0,0.0};
@@ -651,8 +651,8 @@ public class FemaleImmature extends AbstractLHS {
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] = (s+r)*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] = (s+r)*rng.computeNormalVariate(); //stochastic swimming rate
+                uv[0] = (s+r)*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+                uv[1] = (s+r)*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
                 if (debugOps) logger.info("id: "+id+"; r, uv: "+r+", {"+uv[0]+", "+uv[1]+"}\n");
             }
         }
@@ -679,33 +679,7 @@ public class FemaleImmature extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateSize(double dt) {
-        if (fcnGrowth instanceof ExponentialGrowthFunction){
-            /**
-            * @param vars - the inputs variables, as a double[]:
-            *      dt - time step
-            *      z0 - initial weight in terms of protein
-            * @return - the function value (z[dt]) as a Double 
-             */
-            size = (Double)fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
-        } else
-        if (fcnGrowth instanceof ExponentialGrowthFunction){
-            /**
-             * @param vars - the inputs variables, z0 and dt, as a double[].
-             * @return     - the function value (z[dt]) as a Double 
-             */
-            size = (Double)fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
-        } else
-        if (fcnGrowth instanceof LinearGrowthFunction){
-            /**
-             * @param vars - the inputs variables, z0 and dt, as a double[].
-             * @return     - the function value (z[dt]) as a Double 
-             */
-            size = (Double)fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
-        } else
-        if (fcnGrowth instanceof ConstantFunction){
-            double rate = (Double)fcnGrowth.calculate(null);
-            size += rate*dt/DAY_SECS;
-        }
+        size = kernGrowth.calculate(dt,size,temperature,fcnArgs);
     }
 
     /**
@@ -713,21 +687,7 @@ public class FemaleImmature extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
-        double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (fcnMort instanceof ConstantMortalityRate){
-            /**
-             * @param vars - null
-             * @return     - Double - the corresponding mortality rate (per day) 
-             */
-            mortalityRate = (Double)fcnMort.calculate(null);
-        } else 
-        if (fcnMort instanceof TemperatureDependentMortalityRate_Houde1989){
-            /**
-             * @param vars - Double - temperature (deg C)
-             * @return     - Double - the corresponding mortality rate (per day) 
-             */
-            mortalityRate = (Double)fcnMort.calculate(temperature);//using temperature as covariate for mortality
-        }
+        double mortalityRate = kernMort.calculate(temperature);//in unis of [days]^-1
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
@@ -740,17 +700,26 @@ public class FemaleImmature extends AbstractLHS {
     }
     
     private void updatePosition(double[] pos) {
-        totalDepth = i3d.interpolateBathymetricDepth(pos);
-        depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat        = i3d.interpolateLat(pos);
-        lon        = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        if ((pos[0]==posI)&&(pos[1]==posJ)&&(pos[2]==0.0)&&(posK==0.0)){
+            //stationary on the bottom: reuse the position-derived values
+            env.sample(i3d,pos,EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+        } else {
+            //sample position-derived and environmental fields (reusing the cached horizontal fields)
+            env.sample(i3d,pos,EnvironmentSample.POSITION|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+            totalDepth = env.bathymetricDepth;
+            depth      = env.depth;
+            lat        = env.lat;
+            lon        = env.lon;
+            gridCell = GridCellID.fromPosition(pos);
+            posI = pos[0]; posJ = pos[1]; posK = pos[2];
+        }
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
     }
 
     @Override
@@ -824,11 +793,80 @@ public class FemaleImmature extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Gets the last position in the track of the instance.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as Coordinate
+     */
+    @Override
+    public Coordinate getLastPosition(int coordType) {
+        return track.getLastPosition(coordType);
+    }
+    
+    /**
+     * Gets the instance's track.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as Coordinate[]
+     */
+    @Override
+    public Coordinate[] getTrack(int coordType) {
+        return track.getTrack(coordType);
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     * 
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    @Override
+    public void startTrack(Coordinate initPos, int coordType) {
+        track.startTrack(initPos,coordType);
+    }
+
+    /**
+     * Returns the track information in string format.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return 
+     */
+    @Override
+    public String getTrackAsString(int coordType){
+        return track.toString(coordType);
+    }
+
+    /**
+     * Updates both types of tracks (projected and geographic).
+     */    
+    @Override
+    protected void updateTrack() {
+        track.update(lon,lat,-depth,getWriteTracksFlag(),TrackDecimation.getForClass(FemaleImmature.class));
+    }
+
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -836,16 +874,28 @@ public class FemaleImmature extends AbstractLHS {
         return atts.getCSVHeaderShortNames();
     }
     
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. The per-step update
+     * is deferred to here so that it is only done when the attributes are
+     * actually read (reports, transitions, spawning, customizers).
+     */
+    private void syncAttributes() {
+        if (attsDirty) updateAttributes();
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
     @Override
     protected void updateAttributes() {
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
         super.updateAttributes();
         atts.setValue(FemaleImmatureAttributes.PROP_size,size);
         atts.setValue(FemaleImmatureAttributes.PROP_weight,weight);
         atts.setValue(FemaleImmatureAttributes.PROP_salinity,salinity);
         atts.setValue(FemaleImmatureAttributes.PROP_temperature,temperature);
+        attsDirty = false;
     }
 
     /**
@@ -854,6 +904,8 @@ public class FemaleImmature extends AbstractLHS {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        gridCell = GridCellID.parse(gridCellID);
+        posI = Double.NaN;//position-derived values may have changed
         size        = atts.getValue(FemaleImmatureAttributes.PROP_size,size);
         weight      = atts.getValue(FemaleImmatureAttributes.PROP_weight,weight);
         salinity    = atts.getValue(FemaleImmatureAttributes.PROP_salinity,salinity);
@@ -8,15 +8,25 @@
 package wts.models.DisMELS.IBMs.SnowCrab.FemaleMultiparous;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
 import wts.models.DisMELS.IBMs.SnowCrab.EggStage.EggStage;
 import wts.models.DisMELS.IBMs.SnowCrab.EggStage.EggStageAttributes;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.FunctionArgs;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
+import wts.models.DisMELS.IBMs.SnowCrab.LHSTrack;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.ReportWriterInterface;
+import wts.models.DisMELS.IBMs.SnowCrab.RunOptions;
+import wts.models.DisMELS.IBMs.SnowCrab.TrackDecimation;
+import wts.models.DisMELS.IBMs.SnowCrab.YearDay;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.CalendarIF;
 import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 
@@ -27,7 +37,7 @@ import wts.roms.model.LagrangianParticle;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class FemaleMultiparous extends AbstractLHS {
+public class FemaleMultiparous extends AbstractLHS implements ReportWriterInterface {
     
         //Static fields    
             //  Static fields new to this class
@@ -44,13 +54,14 @@ public class FemaleMultiparous extends AbstractLHS {
     public static final String[] nextLHSClasses = new String[]{FemaleMultiparous.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{EggStage.class.getName()};
-    
         //Instance fields
             //  Fields hiding ones from superclass
     /* lhs attributes */
     protected FemaleMultiparousAttributes atts = null;
     /* lhs parameters */
     protected FemaleMultiparousParameters params = null;
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
             //  Fields new to class
             //fields that reflect parameter values
     /** flag indicating instance is a super-individual */
@@ -81,6 +92,10 @@ public class FemaleMultiparous extends AbstractLHS {
     protected double meanTimeToSpawn;
     /** flag to randomize spawning */
     protected boolean randomizeSpawning;
+    /** number of egg (super-)individuals to create per spawning (0 = 1 per egg) */
+    protected int numEggIndivs;
+    /** target max number of live egg individuals, over all females (0 = no limit) */
+    protected int maxLiveEggIndivs;
     
     
         //fields that reflect (new) attribute values
@@ -102,9 +117,21 @@ public class FemaleMultiparous extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** reusable argument buffers for IBM function calls */
+    private FunctionArgs fcnArgs = new FunctionArgs(rand);
+    /** packed id of the grid cell containing the individual (GridCellID.NONE if gridCellID was set directly) */
+    private long gridCell = GridCellID.NONE;
+    /** grid position (i,j,k) at which the position-derived values were last computed */
+    private double posI = Double.NaN, posJ = Double.NaN, posK = Double.NaN;
+    /** flag indicating instance fields have changed since the attributes were last updated */
+    private boolean attsDirty = false;
      /** day of year */
     private double dayOfYear;
-     /** fecundity as number of spawned class objects to create */
+     /** fecundity as number of spawned class objects to create (calculated in step()) */
     private double fecundity;
     /** spawning season flag */
     private boolean isSpawningSeason;
@@ -119,6 +146,10 @@ public class FemaleMultiparous extends AbstractLHS {
     private IBMFunctionInterface fcnMaturity = null; 
     /** IBM function selected for fecundity */
     private IBMFunctionInterface fcnFecundity = null; 
+    /** kernel for the selected growth function */
+    private IBMKernels.Growth kernGrowth = null;
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
     
     /** flag to print debugging info */
     public static boolean debug = false;
@@ -147,7 +178,7 @@ public class FemaleMultiparous extends AbstractLHS {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (FemaleMultiparousParameters) LHS_Factory.createParameters(typeName);
+        params = (FemaleMultiparousParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParametersFromSubClass(params);//set object in the superclass
         setParameters(params);
     }
@@ -221,6 +252,7 @@ public class FemaleMultiparous extends AbstractLHS {
      */
     @Override
     public FemaleMultiparousAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -400,6 +432,9 @@ public class FemaleMultiparous extends AbstractLHS {
         fcnMortality      = params.getSelectedIBMFunctionForCategory(FemaleMultiparousParameters.FCAT_Mortality);
         fcnMaturity       = params.getSelectedIBMFunctionForCategory(FemaleMultiparousParameters.FCAT_Maturity);
         fcnFecundity      = params.getSelectedIBMFunctionForCategory(FemaleMultiparousParameters.FCAT_Fecundity);
+
+        kernGrowth        = IBMKernels.sizeGrowth(fcnGrowth);
+        kernMort          = IBMKernels.sizeMortality(fcnMortality);
     }
     
     /*
@@ -432,22 +467,31 @@ public class FemaleMultiparous extends AbstractLHS {
                 params.getValue(params.PARAM_meanTimeToSpawn,meanTimeToSpawn);
         randomizeSpawning = 
                 params.getValue(params.PARAM_randomizeTransitions,true);
+        numEggIndivs = (int) 
+                params.getValue(params.PARAM_numEggIndivs,0.0);
+        maxLiveEggIndivs = (int) 
+                params.getValue(params.PARAM_maxLiveEggIndivs,0.0);
+        SpawningQuota.setTarget(maxLiveEggIndivs);
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         FemaleMultiparous clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone       = (FemaleMultiparous) super.clone();
             clone.setAttributes((FemaleMultiparousAttributes) atts.clone());
-            clone.setParameters((FemaleMultiparousParameters) params.clone());
+            if (!ParameterSnapshots.isShared()) clone.setParameters((FemaleMultiparousParameters) params.clone());//own IBM functions
             clone.lp    = (LagrangianParticle) lp.clone();
-            clone.track = (ArrayList<Coordinate>) track.clone();
+            clone.env   = new EnvironmentSample();
+            clone.rand    = new CounterRandom();
+            clone.fcnArgs = new FunctionArgs(clone.rand);
+            clone.track = track.copy();
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -498,6 +542,7 @@ public class FemaleMultiparous extends AbstractLHS {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -514,66 +559,38 @@ public class FemaleMultiparous extends AbstractLHS {
     }
     
     private void doSpawning() {
+        syncAttributes();//attribute values are copied to the spawned individuals
         try {
-            //create number of new individuals = fecundity
+            //create number of new individuals = fecundity (calculated in step())
             //logger.info("Adult"+id+" spawning: fecundity = "+fecundity);
-            LifeStageInterface nLHS = null;
-            LifeStageAttributesInterface newAttsI = null;
-            fecundity = (Double)fcnFecundity.calculate(new double[]{size});
-            for (int i=0;i<fecundity;i++) {
-                /** 
-                 * For each individual, we need to:
-                 *          1) create new LHS instance.
-                 *          2. assign new id to new instance (gets done automatically).
-                 *          3) assign current LHS id to new LHS as parentID
-                 *          4) assign current LHS id to new LHS origID
-                 *          5) set number in new LHS to 1.TODO: change this to a variable.
-                 *          6) set age and ageInStage to 0 in new instance.
-                 *          7) copy other attributes.
-                 */
-                nLHS = LHS_Factory.createSpawnedLHS(typeName);
-                newAttsI = nLHS.getAttributes();
-                if (newAttsI instanceof EggStageAttributes) {
-                    EggStageAttributes newAtts = (EggStageAttributes) newAttsI;
-                    //newAtts.setValue(LifeStageAttributesInterface.PROP_id,         -1);<-don't need to update this
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_parentID,   atts.getValue(LifeStageAttributesInterface.PROP_id));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_origID,     atts.getValue(LifeStageAttributesInterface.PROP_id));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_startTime,  time);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_time,       atts.getValue(LifeStageAttributesInterface.PROP_time));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_horizType,  atts.getValue(LifeStageAttributesInterface.PROP_horizType));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_vertType,   atts.getValue(LifeStageAttributesInterface.PROP_vertType));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos1,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos1));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos2,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos2));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_vertPos,    atts.getValue(LifeStageAttributesInterface.PROP_vertPos));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_gridCellID, atts.getValue(LifeStageAttributesInterface.PROP_gridCellID));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_track,      atts.getValue(LifeStageAttributesInterface.PROP_track));
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_active,     true);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_alive,      true);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_attached,   true);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_age,        0.0);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_ageInStage, 0.0);
-                    newAtts.setValue(LifeStageAttributesInterface.PROP_number,     1.0);//TODO:change this to fecundity/numSpawnPerIndiv
-//                    newAtts.setValue(EggStageAttributes.PROP_salinity,   atts.getValue(atts.PROP_salinity));
-//                    newAtts.setValue(EggStageAttributes.PROP_temperature,atts.getValue(atts.PROP_temperature));
-                    //copy LagrangianParticle information
-                    nLHS.setLagrangianParticle(lp);
-                    //start track at last position of oldLHS track
-                    nLHS.startTrack(track.get(track.size()-1),COORDINATE_TYPE_PROJECTED);
-                    nLHS.startTrack(trackLL.get(trackLL.size()-1),COORDINATE_TYPE_GEOGRAPHIC);
-                    //update local variables to capture changes made here
-                    nLHS.setAttributes(newAtts);
-                } else {
-                    //should throw error
-                    logger.info("AdultStage.doSpawning(): no match for attributes type:"+newAttsI.toString());
+            int nEggs = (fecundity>0) ? (int) Math.ceil(fecundity) : 0;
+            double number = 1.0;//number of eggs represented by each new individual
+            if ((nEggs>0)&&((numEggIndivs>0)||(maxLiveEggIndivs>0))) {
+                //split the fecundity evenly among a limited number of super-individuals
+                int nIndivs = getNumEggIndividuals(nEggs);
+                if (maxLiveEggIndivs>0) {
+                    nIndivs = SpawningQuota.getInstance().allocate(id,nIndivs);
+                    //no room left under the target: try again next time step
+                    if (nIndivs==0) return;
                 }
+                number = fecundity/nIndivs;
+                nEggs  = nIndivs;
+            }
+            if (nEggs>0) {
+                //set up the first egg, then copy it for the rest of the batch
+                LifeStageInterface nLHS = createSpawnedIndividual(number);
                 output.add(nLHS);
-                nLHS = null;
+                if (nLHS instanceof EggStage) {
+                    ((EggStage) nLHS).createBatch(nEggs-1,output);
+                } else {
+                    for (int i=1;i<nEggs;i++) output.add(createSpawnedIndividual(number));
+                }
             }
             
             //reset elapsed time to spawn for next spawning
             if (isBatchSpawner) {
                 if (randomizeSpawning) {
-                    timeToSpawn = recoveryPeriod+rng.computeUniformVariate(0.0, meanTimeToSpawn);
+                    timeToSpawn = recoveryPeriod+rand.at(id,time).computeUniformVariate(0.0,meanTimeToSpawn);
                 } else {
                     timeToSpawn = recoveryPeriod+meanTimeToSpawn;
                 }
@@ -587,16 +604,81 @@ public class FemaleMultiparous extends AbstractLHS {
         }
     }
     
+    /**
+     * Gets the number of egg individuals to create for a spawning, before
+     * any limit on the number per time step is applied.
+     * 
+     * @param nEggs - number of eggs spawned
+     * @return - number of egg individuals
+     */
+    private int getNumEggIndividuals(int nEggs) {
+        return (numEggIndivs>0) ? Math.min(numEggIndivs,nEggs) : nEggs;
+    }
+    
+    /**
+     * Creates a single spawned individual, with attributes copied from this one.
+     * 
+     * @param number - number of eggs the new individual represents
+     * @return - the new individual
+     */
+    private LifeStageInterface createSpawnedIndividual(double number) 
+                    throws IllegalAccessException, InstantiationException {
+        LifeStageInterface nLHS = null;
+        LifeStageAttributesInterface newAttsI = null;
+        /** 
+         * For each individual, we need to:
+         *          1) create new LHS instance.
+         *          2. assign new id to new instance (gets done automatically).
+         *          3) assign current LHS id to new LHS as parentID
+         *          4) assign current LHS id to new LHS origID
+         *          5) set number in new LHS.
+         *          6) set age and ageInStage to 0 in new instance.
+         *          7) copy other attributes.
+         */
+        nLHS = LHS_Factory.createSpawnedLHS(typeName);
+        newAttsI = nLHS.getAttributes();
+        if (newAttsI instanceof EggStageAttributes) {
+            EggStageAttributes newAtts = (EggStageAttributes) newAttsI;
+            //newAtts.setValue(LifeStageAttributesInterface.PROP_id,         -1);<-don't need to update this
+            newAtts.setValue(LifeStageAttributesInterface.PROP_parentID,   atts.getValue(LifeStageAttributesInterface.PROP_id));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_origID,     atts.getValue(LifeStageAttributesInterface.PROP_id));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_startTime,  time);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_time,       atts.getValue(LifeStageAttributesInterface.PROP_time));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_horizType,  atts.getValue(LifeStageAttributesInterface.PROP_horizType));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_vertType,   atts.getValue(LifeStageAttributesInterface.PROP_vertType));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos1,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos1));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos2,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos2));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_vertPos,    atts.getValue(LifeStageAttributesInterface.PROP_vertPos));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_gridCellID, atts.getValue(LifeStageAttributesInterface.PROP_gridCellID));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_track,      atts.getValue(LifeStageAttributesInterface.PROP_track));
+            newAtts.setValue(LifeStageAttributesInterface.PROP_active,     true);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_alive,      true);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_attached,   true);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_age,        0.0);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_ageInStage, 0.0);
+            newAtts.setValue(LifeStageAttributesInterface.PROP_number,     number);
+//                newAtts.setValue(EggStageAttributes.PROP_salinity,   atts.getValue(atts.PROP_salinity));
+//                newAtts.setValue(EggStageAttributes.PROP_temperature,atts.getValue(atts.PROP_temperature));
+            //copy LagrangianParticle information
+            nLHS.setLagrangianParticle(lp);
+            //start track at last position of oldLHS track
+            nLHS.startTrack(track.getLastPosition(COORDINATE_TYPE_PROJECTED),COORDINATE_TYPE_PROJECTED);
+            nLHS.startTrack(track.getLastPosition(COORDINATE_TYPE_GEOGRAPHIC),COORDINATE_TYPE_GEOGRAPHIC);
+            //update local variables to capture changes made here
+            nLHS.setAttributes(newAtts);
+        } else {
+            //should throw error
+            logger.info("AdultStage.doSpawning(): no match for attributes type:"+newAttsI.toString());
+        }
+        return nLHS;
+    }
+    
     /**
      * Initializes time-dependent and time-independent variables
      * @param time
      */
     private void initializeTimedependentVariables() {
-        //temporarily set calendar time to variable time
-        CalendarIF cal = globalInfo.getCalendar();
-        long modTime = cal.getTimeOffset();
-        cal.setTimeOffset((long) time);
-        dayOfYear = cal.getYearDay();
+        dayOfYear = YearDay.getYearDay(time);
         
         //set up spawning
         isSpawningSeason = DateTimeFunctions.isBetweenDOY(dayOfYear,
@@ -610,22 +692,19 @@ public class FemaleMultiparous extends AbstractLHS {
             doOnceAfterSpawningSeason = true;
             if (isBatchSpawner) {
                 if (randomizeSpawning) {
-                    timeToSpawn = rng.computeUniformVariate(0.0, meanTimeToSpawn);
+                    timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,meanTimeToSpawn);
                 } else {
                     timeToSpawn = meanTimeToSpawn;
                 }
             } else {
                 //spawn once
                 if (randomizeSpawning) {
-                    timeToSpawn = rng.computeUniformVariate(0.0, lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning));
+                    timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning));
                 } else {
                     timeToSpawn = (lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning))/2.0;
                 }
             }
         }
-        
-        //reset calendar time to model time
-        cal.setTimeOffset(modTime);
     }
 
     public void initialize() {
@@ -688,13 +767,13 @@ public class FemaleMultiparous extends AbstractLHS {
         //Set up time of first spawning
         if (isBatchSpawner) {
             if (randomizeSpawning) {
-                timeToSpawn = rng.computeUniformVariate(0.0, meanTimeToSpawn)*DAY_SECS;
+                timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,meanTimeToSpawn)*DAY_SECS;
             } else {
                 timeToSpawn = meanTimeToSpawn;
             }
         } else {
             if (randomizeSpawning) {
-                timeToSpawn = rng.computeUniformVariate(0.0, lengthOfSpawningSeason)*DAY_SECS;
+                timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,lengthOfSpawningSeason)*DAY_SECS;
             } else {
                 timeToSpawn = (lengthOfSpawningSeason/2.0)*DAY_SECS;
             }
@@ -704,7 +783,7 @@ public class FemaleMultiparous extends AbstractLHS {
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
         //determine daytime/nighttime for vertical migration & calc indiv. W
-        dayOfYear = globalInfo.getCalendar().getYearDay();
+        dayOfYear = YearDay.getYearDay(time);
 //        isDaytime = DateTimeFunctions.isDaylight(lon,lat,dayOfYear);
         isSpawningSeason = DateTimeFunctions.isBetweenDOY(dayOfYear,firstDayOfSpawning,firstDayOfSpawning+lengthOfSpawningSeason);
         if (isSpawningSeason) {
@@ -717,6 +796,10 @@ public class FemaleMultiparous extends AbstractLHS {
         }
         //TODO: implement movement here
         double[] pos;
+        if (attached&&(horizRWP<=0)&&RunOptions.getSkipAdvectionWhenAttached()){
+            //stationary on the bottom, ignoring bottom currents: skip the predictor/corrector steps
+            pos = lp.getIJK();
+        } else {
             double[] uv = calcUV(dt);
             lp.setU(uv[0],lp.getN());
             lp.setV(uv[1],lp.getN());
@@ -731,6 +814,7 @@ public class FemaleMultiparous extends AbstractLHS {
             //now do corrector step
             lp.doCorrectorStep();
             pos = lp.getIJK();
+        }
         time = time+dt;
         updateSize(dt);
         updateNum(dt);
@@ -741,10 +825,19 @@ public class FemaleMultiparous extends AbstractLHS {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        if (isSpawningSeason&&(timeToSpawn<0)) {
+            //will spawn this step: calculate the fecundity for doSpawning(), and request 
+            //egg individuals so the room left under the live egg target can be shared 
+            //among all spawning females
+            fecundity = FunctionArgs.calculate(fcnFecundity,fcnArgs.set(size));
+            if ((maxLiveEggIndivs>0)&&(fecundity>0)) 
+                SpawningQuota.getInstance().request(id,getNumEggIndividuals((int) Math.ceil(fecundity)));
+        }
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -757,8 +850,8 @@ public class FemaleMultiparous extends AbstractLHS {
         double[] uv = {0.0,0.0};
         if (horizRWP>0) {
             double r = Math.sqrt(horizRWP/Math.abs(dt));
-            uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-            uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+            uv[0] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+            uv[1] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
             if (debugOps) logger.info("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
         }
         uv[0] = Math.signum(dt)*uv[0];
@@ -778,7 +871,7 @@ public class FemaleMultiparous extends AbstractLHS {
     private void updateSize(double dt) {
         //The following works for
         //  wts.models.DisMELS.IBMFunctions.Growth.vonBertalanffyGrowthFunction
-        size = (Double) fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
+        size = kernGrowth.calculate(dt,size,temperature,fcnArgs);
     }
 
     /**
@@ -789,7 +882,7 @@ public class FemaleMultiparous extends AbstractLHS {
         //The following works for
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.PowerLawFunction
-        double mortalityRate = (Double)fcnMortality.calculate(size);//in unis of [days]^-1
+        double mortalityRate = kernMort.calculate(size);//in unis of [days]^-1
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)&&(size>=minSizeAtTrans)) {
             totRate += stageTransRate;
@@ -802,16 +895,25 @@ public class FemaleMultiparous extends AbstractLHS {
     }
 
     private void updatePosition(double[] pos) {
-        depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat   = i3d.interpolateLat(pos);
-        lon   = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        if ((pos[0]==posI)&&(pos[1]==posJ)&&(pos[2]==0.0)&&(posK==0.0)){
+            //stationary on the bottom: reuse the position-derived values
+            env.sample(i3d,pos,EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+        } else {
+            //sample position-derived and environmental fields (reusing the cached horizontal fields)
+            env.sample(i3d,pos,EnvironmentSample.DEPTH|EnvironmentSample.LAT|EnvironmentSample.LON|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+            depth = env.depth;
+            lat   = env.lat;
+            lon   = env.lon;
+            gridCell = GridCellID.fromPosition(pos);
+            posI = pos[0]; posJ = pos[1]; posK = pos[2];
+        }
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
     }
 
     @Override
@@ -879,11 +981,80 @@ public class FemaleMultiparous extends AbstractLHS {
         return isSuperIndividual;
     }
 
+    /**
+     * Gets the last position in the track of the instance.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as Coordinate
+     */
+    @Override
+    public Coordinate getLastPosition(int coordType) {
+        return track.getLastPosition(coordType);
+    }
+    
+    /**
+     * Gets the instance's track.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as Coordinate[]
+     */
+    @Override
+    public Coordinate[] getTrack(int coordType) {
+        return track.getTrack(coordType);
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     * 
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    @Override
+    public void startTrack(Coordinate initPos, int coordType) {
+        track.startTrack(initPos,coordType);
+    }
+
+    /**
+     * Returns the track information in string format.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return 
+     */
+    @Override
+    public String getTrackAsString(int coordType){
+        return track.toString(coordType);
+    }
+
+    /**
+     * Updates both types of tracks (projected and geographic).
+     */    
+    @Override
+    protected void updateTrack() {
+        track.update(lon,lat,-depth,getWriteTracksFlag(),TrackDecimation.getForClass(FemaleMultiparous.class));
+    }
+
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -891,17 +1062,29 @@ public class FemaleMultiparous extends AbstractLHS {
         return atts.getCSVHeaderShortNames();
     }
     
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. The per-step update
+     * is deferred to here so that it is only done when the attributes are
+     * actually read (reports, transitions, spawning, customizers).
+     */
+    private void syncAttributes() {
+        if (attsDirty) updateAttributes();
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
     @Override
     protected void updateAttributes() {
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
         super.updateAttributes();
         atts.setValue(FemaleMultiparousAttributes.PROP_gonadStage,gonadStage);
         atts.setValue(FemaleMultiparousAttributes.PROP_size,size);
         atts.setValue(FemaleMultiparousAttributes.PROP_weight,weight);
         atts.setValue(FemaleMultiparousAttributes.PROP_salinity,salinity);
         atts.setValue(FemaleMultiparousAttributes.PROP_temperature,temperature);
+        attsDirty = false;
     }
 
     /**
@@ -910,6 +1093,8 @@ public class FemaleMultiparous extends AbstractLHS {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        gridCell = GridCellID.parse(gridCellID);
+        posI = Double.NaN;//position-derived values may have changed
         gonadStage     = atts.getValue(FemaleMultiparousAttributes.PROP_gonadStage,gonadStage);
         size    = atts.getValue(FemaleMultiparousAttributes.PROP_size,size);
         weight     = atts.getValue(FemaleMultiparousAttributes.PROP_weight,weight);
@@ -0,0 +1,174 @@
+/*
+ * SpawningQuota.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab.FemaleMultiparous;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Target maximum number of live egg individuals, and the division of the room
+ * left under it among all the females that spawn in a time step.
+ *
+ * The target is set from the FemaleMultiparous parameters (setTarget()). The
+ * tallies for a run are kept by the run's SpawningQuota object (getInstance();
+ * startRun() replaces it with a fresh one), and are reset explicitly by
+ * startStep(), which the model must call at the start of each time step,
+ * before stepping the individuals. ParallelStepper does both (startRun() when
+ * it is created, startStep() in step()), so step the population with a
+ * ParallelStepper (with one thread for a serial run) when the target is used.
+ *
+ * Within a time step, first all individuals are stepped: each live egg
+ * individual is counted (countLiveEgg()) and each female that will spawn in
+ * the step requests the number of egg individuals she would create
+ * (request()). Then the spawned individuals are collected, and each spawning
+ * female gets her share of the room left under the target (allocate()). If the
+ * total requested fits, every female gets what she requested; otherwise each
+ * gets the room in proportion to her request, rounded down, and the slots left
+ * over go to the largest remainders (ties to the smaller id). The shares add up
+ * to the room left exactly, so the number of live egg individuals does not
+ * exceed the target (except by eggs created before the target was set), and
+ * a female's share does not depend on the order in which the females are
+ * stepped or spawn, or on the number of threads. A female whose share is zero
+ * does not spawn in the step (see FemaleMultiparous.doSpawning()).
+ *
+ * All methods are thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class SpawningQuota {
+
+    /** target max number of live egg individuals (0 = no limit) */
+    private static volatile int target = 0;
+    /** the quota for the current run */
+    private static volatile SpawningQuota instance = new SpawningQuota();
+
+    /** number of live egg individuals counted in the current time step */
+    private final AtomicLong live = new AtomicLong(0);
+    /** total number of egg individuals requested in the current time step */
+    private long requested = 0;
+    /** number of egg individuals requested, by female id */
+    private final Map<Long,Integer> requests = new HashMap<>();
+    /** number of egg individuals allowed, by female id (null until allocation starts) */
+    private Map<Long,Integer> shares = null;
+
+    private SpawningQuota(){}
+
+    /**
+     * Sets the target max number of live egg individuals.
+     *
+     * @param max - the target (0 = no limit)
+     */
+    public static void setTarget(int max){
+        target = Math.max(0,max);
+    }
+
+    /**
+     * Gets the target max number of live egg individuals.
+     *
+     * @return - the target (0 = no limit)
+     */
+    public static int getTarget(){
+        return target;
+    }
+
+    /**
+     * Gets the quota for the current run.
+     *
+     * @return - the quota
+     */
+    public static SpawningQuota getInstance(){
+        return instance;
+    }
+
+    /**
+     * Starts a new run with a fresh quota.
+     *
+     * @return - the new quota
+     */
+    public static SpawningQuota startRun(){
+        instance = new SpawningQuota();
+        return instance;
+    }
+
+    /**
+     * Starts a new time step, clearing the tallies of the previous one.
+     * Call this before stepping the individuals.
+     */
+    public synchronized void startStep(){
+        live.set(0);
+        requested = 0;
+        requests.clear();
+        shares = null;
+    }
+
+    /**
+     * Counts a live egg individual in the current time step.
+     */
+    public void countLiveEgg(){
+        live.incrementAndGet();
+    }
+
+    /**
+     * Requests a number of egg individuals for a female that will spawn in
+     * the current time step.
+     *
+     * @param id - the female's id
+     * @param n  - number of egg individuals requested
+     */
+    public synchronized void request(long id, int n){
+        Integer prev = requests.put(id,n);
+        requested += n-((prev!=null) ? prev : 0);
+    }
+
+    /**
+     * Gets the number of egg individuals a spawning female may create in the
+     * current time step.
+     *
+     * @param id - the female's id
+     * @param n  - number requested by the female
+     * @return - the number allowed (0 if she did not request any)
+     */
+    public synchronized int allocate(long id, int n){
+        if (target<=0) return n;
+        if (shares==null) shares = computeShares();
+        Integer s = shares.get(id);
+        return (s!=null) ? Math.min(n,s) : 0;
+    }
+
+    private Map<Long,Integer> computeShares(){
+        long room = Math.max(0,target-live.get());
+        if (requested<=room) return new HashMap<>(requests);
+        Map<Long,Integer> res = new HashMap<>(2*requests.size());
+        List<long[]> rems = new ArrayList<>(requests.size());//{remainder, id}
+        long left = room;
+        for (Map.Entry<Long,Integer> e: requests.entrySet()){
+            long p = room*e.getValue();
+            int s = (int) (p/requested);
+            res.put(e.getKey(),s);
+            left -= s;
+            rems.add(new long[]{p%requested,e.getKey()});
+        }
+        Collections.sort(rems,new Comparator<long[]>(){
+            @Override
+            public int compare(long[] a, long[] b){
+                if (a[0]!=b[0]) return (a[0]>b[0]) ? -1 : 1;
+                return (a[1]<b[1]) ? -1 : ((a[1]==b[1]) ? 0 : 1);
+            }
+        });
+        for (int i=0;i<left;i++){
+            Long id = rems.get(i)[1];
+            res.put(id,res.get(id)+1);
+        }
+        return res;
+    }
+}
@@ -18,6 +18,8 @@ import wts.models.DisMELS.IBMFunctions.Growth.vonBertalanffyGrowthFunction;
 import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
 import wts.models.DisMELS.IBMFunctions.Miscellaneous.LogisticFunction;
 import wts.models.DisMELS.IBMFunctions.Miscellaneous.PowerLawFunction;
+import wts.models.DisMELS.IBMs.SnowCrab.HeadlessMode;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
 import wts.models.DisMELS.framework.AbstractLHSParameters;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMParameter;
@@ -69,6 +71,8 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
     
     /** Utility field used by bound properties.  */
     private transient PropertyChangeSupport propertySupport;
+    /* flag indicating the instance is being filled in as a copy (its edits are not reported to ParameterSnapshots) */
+    private transient boolean copying = false;
     
     /**
      * Creates a new instance of AdultStageParameters.
@@ -77,7 +81,7 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
         super("",numParams,numFunctionCats);
         createMapToValues();
         createMapToSelectedFunctions();
-        propertySupport =  new PropertyChangeSupport(this);
+        if (!HeadlessMode.isHeadless()) propertySupport =  new PropertyChangeSupport(this);
     }
     
     /**
@@ -87,7 +91,7 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
         super(typeName,numParams,numFunctionCats);
         createMapToValues();
         createMapToSelectedFunctions();
-        propertySupport =  new PropertyChangeSupport(this);
+        if (!HeadlessMode.isHeadless()) propertySupport =  new PropertyChangeSupport(this);
     }
     
     /**
@@ -187,6 +191,23 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
         return mapOfPotentialFunctionsByCategory.get(cat).get(key);    
     }
 
+    /**
+     * Sets the value of a parameter of an IBM function. Function parameters 
+     * should be edited through this method (rather than on the function returned 
+     * by getIBMFunction()) so that the shared parameters snapshot for the type 
+     * is replaced (see ParameterSnapshots).
+     * 
+     * @param cat   - usage category 
+     * @param key   - function name
+     * @param pKey  - function parameter name
+     * @param value - the new value
+     * @return - true if the value was set
+     */
+    public boolean setFunctionParameter(String cat, String key, String pKey, Object value){
+        if (!copying) ParameterSnapshots.edited(this);
+        return mapOfPotentialFunctionsByCategory.get(cat).get(key).setParameterValue(pKey,value);
+    }
+
     @Override
     public Set<String> getIBMFunctionCategories(){
         return mapOfPotentialFunctionsByCategory.keySet();
@@ -199,6 +220,7 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
     
     @Override
    public void selectIBMFunctionForCategory(String cat, String key){
+        if (!copying) ParameterSnapshots.edited(this);
         IBMFunctionInterface ifi = mapOfPotentialFunctionsByCategory.get(cat).get(key);
         mapOfSelectedFunctionsByCategory.put(cat,ifi);
     }
@@ -218,6 +240,7 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
         FemalePrimiparousParameters clone = null;
         try {
             clone = (FemalePrimiparousParameters) super.clone();
+            clone.copying = true;
             for (String pKey: setOfParamKeys) {
                 clone.setValue(pKey,this.getValue(pKey));
             }
@@ -234,7 +257,8 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
                     if (sfi==tfi) clone.selectIBMFunctionForCategory(fcKey, fKey);
                 }
             }
-            clone.propertySupport = new PropertyChangeSupport(clone);
+            clone.copying = false;
+            clone.propertySupport = HeadlessMode.isHeadless() ? null : new PropertyChangeSupport(clone);
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -312,11 +336,16 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
      */
     @Override
     public void setValue(String key, Object value) {
+        if (!copying) ParameterSnapshots.edited(this);
         if (mapParams.containsKey(key)) {
             IBMParameter p = mapParams.get(key);
-            Object old = p.getValue();
-            p.setValue(value);
-            propertySupport.firePropertyChange(key,old,value);
+            if (HeadlessMode.suppressEvent(propertySupport)) {
+                p.setValue(value);//no listeners, so skip the property change
+            } else {
+                Object old = p.getValue();
+                p.setValue(value);
+                if (propertySupport!=null) propertySupport.firePropertyChange(key,old,value);
+            }
         }
     }
 
@@ -325,6 +354,7 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
      * @param l The listener to add.
      */
     public void addPropertyChangeListener(java.beans.PropertyChangeListener l) {
+        if (propertySupport==null) propertySupport = new PropertyChangeSupport(this);
         propertySupport.addPropertyChangeListener(l);
     }
 
@@ -333,6 +363,6 @@ public class FemalePrimiparousParameters extends AbstractLHSParameters {
      * @param l The listener to remove.
      */
     public void removePropertyChangeListener(java.beans.PropertyChangeListener l) {
-        propertySupport.removePropertyChangeListener(l);
+        if (propertySupport!=null) propertySupport.removePropertyChangeListener(l);
     }
 }
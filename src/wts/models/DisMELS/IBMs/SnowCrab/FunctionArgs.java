@@ -0,0 +1,129 @@
+/*
+ * FunctionArgs.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+
+/**
+ * Reusable argument buffers for calling IBM functions.
+ * 
+ * The IBM functions take their input variables as a double[], which the life
+ * stages used to allocate for every call (several times per individual per time
+ * step). A FunctionArgs instance holds one buffer for each number of variables
+ * (1-5); set(...) fills the buffer with the matching length and returns it, so
+ * 
+ *      size = FunctionArgs.calculate(fcnGrowth,fcnArgs.set(dt/DAY_SECS,size));
+ * 
+ * makes no allocations if fcnGrowth implements PrimitiveIBMFunction. The
+ * returned buffer is only valid until the next call to set() with the same number
+ * of variables, so functions must not keep a reference to it.
+ * 
+ * An instance may also carry the individual's CounterRandom, for functions
+ * that draw random numbers (see IBMKernels.eggDevelopment()).
+ * 
+ * Each individual should have its own instance; instances are not thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class FunctionArgs {
+
+    private final double[] args1 = new double[1];
+    private final double[] args2 = new double[2];
+    private final double[] args3 = new double[3];
+    private final double[] args4 = new double[4];
+    private final double[] args5 = new double[5];
+    private final CounterRandom random;
+
+    /**
+     * Creates buffers with no random number source.
+     */
+    public FunctionArgs(){
+        this(null);
+    }
+
+    /**
+     * Creates buffers for an individual.
+     *
+     * @param random - the individual's random numbers (may be null)
+     */
+    public FunctionArgs(CounterRandom random){
+        this.random = random;
+    }
+
+    /**
+     * Gets the individual's random numbers.
+     *
+     * @return - the CounterRandom, or null
+     */
+    public CounterRandom getRandom(){
+        return random;
+    }
+
+    /**
+     * Fills the 1-element buffer.
+     *
+     * @return - the buffer
+     */
+    public double[] set(double a){
+        args1[0] = a;
+        return args1;
+    }
+
+    /**
+     * Fills the 2-element buffer.
+     *
+     * @return - the buffer
+     */
+    public double[] set(double a, double b){
+        args2[0] = a; args2[1] = b;
+        return args2;
+    }
+
+    /**
+     * Fills the 3-element buffer.
+     *
+     * @return - the buffer
+     */
+    public double[] set(double a, double b, double c){
+        args3[0] = a; args3[1] = b; args3[2] = c;
+        return args3;
+    }
+
+    /**
+     * Fills the 4-element buffer.
+     *
+     * @return - the buffer
+     */
+    public double[] set(double a, double b, double c, double d){
+        args4[0] = a; args4[1] = b; args4[2] = c; args4[3] = d;
+        return args4;
+    }
+
+    /**
+     * Fills the 5-element buffer.
+     *
+     * @return - the buffer
+     */
+    public double[] set(double a, double b, double c, double d, double e){
+        args5[0] = a; args5[1] = b; args5[2] = c; args5[3] = d; args5[4] = e;
+        return args5;
+    }
+
+    /**
+     * Calculates the value of a function returning a Double, without boxing
+     * if the function implements PrimitiveIBMFunction.
+     *
+     * @param fcn  - the function
+     * @param vars - the input variables
+     * @return - the function value
+     */
+    public static double calculate(IBMFunctionInterface fcn, double[] vars){
+        if (fcn instanceof PrimitiveIBMFunction) return ((PrimitiveIBMFunction) fcn).calculateDouble(vars);
+        return (Double) fcn.calculate(vars);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * GridCellID.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+/**
+ * Packed numeric grid cell identifiers.
+ *
+ * The life stages keep the grid cell an individual is in as a long holding the
+ * (rounded) grid indices i and j, i in the upper and j in the lower 32 bits, and
+ * only convert it to the "i_j" String used for the gridCellID attribute when the
+ * attributes are updated. The packed value can be used directly as a key for
+ * per-cell caches (e.g., BottomEnvironmentCache).
+ *
+ * @author William Stockhausen
+ */
+public final class GridCellID {
+
+    /** value indicating no packed id (e.g., the String id was set directly) */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private GridCellID(){}
+
+    /**
+     * Packs grid indices into a cell id.
+     *
+     * @param i - grid index i
+     * @param j - grid index j
+     * @return - the packed id
+     */
+    public static long pack(long i, long j){
+        return (i<<32)|(j&0xffffffffL);
+    }
+
+    /**
+     * Packs the grid cell containing a grid position into a cell id.
+     *
+     * @param pos - grid position (i,j,...)
+     * @return - the packed id for (round(i),round(j))
+     */
+    public static long fromPosition(double[] pos){
+        return pack(Math.round(pos[0]),Math.round(pos[1]));
+    }
+
+    /**
+     * Gets grid index i from a packed id.
+     *
+     * @param id - the packed id
+     * @return - i
+     */
+    public static int getI(long id){
+        return (int)(id>>32);
+    }
+
+    /**
+     * Gets grid index j from a packed id.
+     *
+     * @param id - the packed id
+     * @return - j
+     */
+    public static int getJ(long id){
+        return (int) id;
+    }
+
+    /**
+     * Converts a packed id to the "i_j" String form.
+     *
+     * @param id - the packed id
+     * @return - the String id
+     */
+    public static String toString(long id){
+        return getI(id)+"_"+getJ(id);
+    }
+
+    /**
+     * Parses an "i_j" String id.
+     *
+     * @param str - the String id
+     * @return - the packed id, or NONE if str is not of the form "i_j"
+     */
+    public static long parse(String str){
+        if (str==null) return NONE;
+        int k = str.indexOf('_');
+        if (k<=0) return NONE;
+        try {
+            return pack(Long.parseLong(str.substring(0,k)),Long.parseLong(str.substring(k+1)));
+        } catch (NumberFormatException ex) {
+            return NONE;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * HeadlessMode.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.beans.PropertyChangeSupport;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class-level switch for running the snow crab IBM without a GUI.
+ *
+ * In headless mode, attributes and parameters objects do not create a
+ * PropertyChangeSupport until a listener registers, and their setValue methods
+ * skip the change-event machinery (retrieving the old value, firing the event)
+ * while no listener is registered. For debugging, the number of events skipped
+ * this way can be counted (setCountSuppressedEvents(true)) to confirm that
+ * customizers still receive events when they are used interactively (the count
+ * does not increase for objects with registered listeners). Counting is off by
+ * default, because the shared counter would be updated by every setValue call
+ * on every thread.
+ *
+ * @author William Stockhausen
+ */
+public final class HeadlessMode {
+
+    /** flag to run in headless mode */
+    private static volatile boolean headless = false;
+
+    /** flag to count the suppressed property change events (for debugging) */
+    private static volatile boolean countSuppressed = false;
+    /** number of property change events suppressed in headless mode (if counted) */
+    private static final AtomicLong suppressedEvents = new AtomicLong(0);
+
+    private HeadlessMode(){}
+
+    /**
+     * Sets the flag to run in headless mode (no property change events
+     * for objects without listeners).
+     *
+     * @param b - true to run in headless mode
+     */
+    public static void setHeadless(boolean b){
+        headless = b;
+    }
+
+    /**
+     * Gets the flag to run in headless mode.
+     *
+     * @return - true if running in headless mode
+     */
+    public static boolean isHeadless(){
+        return headless;
+    }
+
+    /**
+     * Sets the flag to count the property change events suppressed in 
+     * headless mode (for debugging).
+     *
+     * @param b - true to count suppressed events
+     */
+    public static void setCountSuppressedEvents(boolean b){
+        countSuppressed = b;
+    }
+
+    /**
+     * Gets the flag to count the property change events suppressed in 
+     * headless mode.
+     *
+     * @return - true if suppressed events are counted
+     */
+    public static boolean getCountSuppressedEvents(){
+        return countSuppressed;
+    }
+
+    /**
+     * Gets the number of property change events suppressed since the
+     * count was last reset (0 unless counting is on).
+     *
+     * @return - the count
+     */
+    public static long getSuppressedEventCount(){
+        return suppressedEvents.get();
+    }
+
+    /**
+     * Resets the count of suppressed property change events to zero.
+     */
+    public static void resetSuppressedEventCount(){
+        suppressedEvents.set(0);
+    }
+
+    /**
+     * Determines whether a property change event for an object with the given
+     * PropertyChangeSupport should be skipped. If so, and counting is on, the 
+     * suppressed event count is incremented.
+     *
+     * @param pcs - the object's PropertyChangeSupport (may be null)
+     * @return - true if the event should be skipped
+     */
+    public static boolean suppressEvent(PropertyChangeSupport pcs){
+        if (headless && ((pcs==null)||!pcs.hasListeners(null))) {
+            if (countSuppressed) suppressedEvents.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+}
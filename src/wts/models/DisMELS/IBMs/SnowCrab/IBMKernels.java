@@ -0,0 +1,281 @@
+/*
+ * IBMKernels.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import wts.models.DisMELS.IBMFunctions.Growth.ExponentialGrowthFunction;
+import wts.models.DisMELS.IBMFunctions.Growth.LinearGrowthFunction;
+import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
+import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
+import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRate_Houde1989;
+import wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction;
+import wts.models.DisMELS.IBMFunctions.SwimmingBehavior.PowerLawSwimmingSpeedFunction;
+import wts.models.DisMELS.IBMs.SnowCrab.EggStage.EggDevelopmentFunction;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Kernels that evaluate the IBM functions selected for a life stage.
+ *
+ * The life stages used to work out how to call their growth, mortality and
+ * swimming speed functions from chains of instanceof tests every time step.
+ * The factory methods here do that once, when a stage's IBM functions are set
+ * (setIBMFunctions()), and return a kernel specialized for the selected function,
+ * so each step makes a single call on the kernel. Functions of types the stages
+ * do not recognize give kernels that leave values unchanged (growth) or return 0
+ * (rates, speeds), as the instanceof chains did.
+ * 
+ * The adolescent and adult stages call whatever growth and mortality functions
+ * are selected, with size as the covariate (sizeGrowth(), sizeMortality()); their
+ * kernels resolve the calling convention (PrimitiveIBMFunction or not, constant
+ * or not) once, instead of on every call.
+ *
+ * Each kernel class calls a single function class, so its call to the function
+ * stays monomorphic for the JIT compiler however many stages (with different
+ * functions) share IBMKernels; routing the calls through a common helper such
+ * as FunctionArgs.calculate() would make them megamorphic and measurably slower
+ * than the instanceof chains (see IBMKernelsBenchmark in the unit tests).
+ *
+ * Kernels hold no state other than the function and may be shared.
+ *
+ * @author William Stockhausen
+ */
+public final class IBMKernels {
+
+    private IBMKernels(){}
+
+    /**
+     * Kernel for a growth (or development) function.
+     */
+    public static abstract class Growth {
+        /**
+         * Calculates the new value of the growing quantity.
+         *
+         * @param dt   - time step (s)
+         * @param z    - value (size, development stage) at the start of the time step
+         * @param T    - temperature (deg C)
+         * @param args - reusable argument buffers
+         * @return - value at the end of the time step
+         */
+        public abstract double calculate(double dt, double z, double T, FunctionArgs args);
+    }
+
+    /**
+     * Kernel for a rate (e.g., mortality) function of a single covariate.
+     */
+    public static abstract class Rate {
+        /**
+         * Calculates the rate.
+         *
+         * @param x - the covariate (e.g., temperature)
+         * @return - the rate
+         */
+        public abstract double calculate(double x);
+    }
+
+    /**
+     * Kernel for a swimming speed function.
+     */
+    public static abstract class Speed {
+        /**
+         * Calculates the swimming speed.
+         *
+         * @param dt   - time step (s)
+         * @param size - size of the individual
+         * @param args - reusable argument buffers
+         * @return - the speed
+         */
+        public abstract double calculate(double dt, double size, FunctionArgs args);
+    }
+
+    /**
+     * Creates the kernel for a growth function taking (dt [days], z0).
+     *
+     * @param fcn - ExponentialGrowthFunction, LinearGrowthFunction or ConstantFunction (rate per day)
+     * @return - the kernel
+     */
+    public static Growth growth(final IBMFunctionInterface fcn){
+        if (fcn instanceof ExponentialGrowthFunction){
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    return (Double)fcn.calculate(args.set(dt/LifeStageInterface.DAY_SECS,z));
+                }
+            };
+        }
+        if (fcn instanceof LinearGrowthFunction){
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    return (Double)fcn.calculate(args.set(dt/LifeStageInterface.DAY_SECS,z));
+                }
+            };
+        }
+        return constantRateOrNone(fcn);
+    }
+
+    /**
+     * Creates the kernel for an egg development function.
+     *
+     * The random factor of an EggDevelopmentFunction is drawn from the
+     * CounterRandom carried by the argument buffers, if any.
+     *
+     * @param fcn - EggDevelopmentFunction (taking dt [hours], s0, T) or ConstantFunction (rate per day)
+     * @return - the kernel
+     */
+    public static Growth eggDevelopment(final IBMFunctionInterface fcn){
+        if (fcn instanceof EggDevelopmentFunction){
+            final EggDevelopmentFunction dev = (EggDevelopmentFunction) fcn;
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    return dev.calculateDouble(args.set(dt/LifeStageInterface.HR_SECS,z,T),args.getRandom());
+                }
+            };
+        }
+        return constantRateOrNone(fcn);
+    }
+
+    /**
+     * Creates the kernel for a growth function of size taking (dt [days], size),
+     * as used by the adolescent and adult stages.
+     *
+     * @param fcn - the growth function (e.g., vonBertalanffyGrowthFunction), or null
+     * @return - the kernel (leaving size unchanged if fcn is null)
+     */
+    public static Growth sizeGrowth(final IBMFunctionInterface fcn){
+        if (fcn instanceof PrimitiveIBMFunction){
+            final PrimitiveIBMFunction pfcn = (PrimitiveIBMFunction) fcn;
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    return pfcn.calculateDouble(args.set(dt/LifeStageInterface.DAY_SECS,z));
+                }
+            };
+        }
+        if (fcn!=null){
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    return (Double) fcn.calculate(args.set(dt/LifeStageInterface.DAY_SECS,z));
+                }
+            };
+        }
+        return constantRateOrNone(null);
+    }
+
+    private static Growth constantRateOrNone(final IBMFunctionInterface fcn){
+        if (fcn instanceof ConstantFunction){
+            return new Growth(){
+                @Override
+                public double calculate(double dt, double z, double T, FunctionArgs args){
+                    double rate = (Double)fcn.calculate(null);
+                    return z+rate*dt/LifeStageInterface.DAY_SECS;
+                }
+            };
+        }
+        return new Growth(){
+            @Override
+            public double calculate(double dt, double z, double T, FunctionArgs args){
+                return z;
+            }
+        };
+    }
+
+    /**
+     * Creates the kernel for a mortality function.
+     *
+     * @param fcn - ConstantMortalityRate or TemperatureDependentMortalityRate_Houde1989
+     * @return - the kernel, giving the mortality rate (per day) for a temperature
+     */
+    public static Rate mortality(final IBMFunctionInterface fcn){
+        if (fcn instanceof ConstantMortalityRate){
+            return new Rate(){
+                @Override
+                public double calculate(double x){
+                    return (Double)fcn.calculate(null);
+                }
+            };
+        }
+        if (fcn instanceof TemperatureDependentMortalityRate_Houde1989){
+            return new Rate(){
+                @Override
+                public double calculate(double x){
+                    return (Double)fcn.calculate(x);
+                }
+            };
+        }
+        return new Rate(){
+            @Override
+            public double calculate(double x){
+                return 0.0;
+            }
+        };
+    }
+
+    /**
+     * Creates the kernel for a mortality function of size, as used by the
+     * adolescent and adult stages.
+     *
+     * @param fcn - ConstantFunction or ConstantMortalityRate (size is not used), 
+     *              a function taking size as a Double (e.g., PowerLawFunction), or null
+     * @return - the kernel, giving the mortality rate (per day) for a size (0 if fcn is null)
+     */
+    public static Rate sizeMortality(final IBMFunctionInterface fcn){
+        if (fcn instanceof ConstantFunction){
+            return new Rate(){
+                @Override
+                public double calculate(double x){
+                    return (Double)fcn.calculate(null);
+                }
+            };
+        }
+        if (fcn instanceof ConstantMortalityRate){
+            return mortality(fcn);
+        }
+        if (fcn!=null){
+            return new Rate(){
+                @Override
+                public double calculate(double x){
+                    return (Double)fcn.calculate(x);
+                }
+            };
+        }
+        return mortality(null);
+    }
+
+    /**
+     * Creates the kernel for a swimming speed function.
+     *
+     * @param fcn - PowerLawSwimmingSpeedFunction (taking dt, size) or ConstantMovementRateFunction (taking dt)
+     * @return - the kernel
+     */
+    public static Speed swimmingSpeed(final IBMFunctionInterface fcn){
+        if (fcn instanceof PowerLawSwimmingSpeedFunction){
+            return new Speed(){
+                @Override
+                public double calculate(double dt, double size, FunctionArgs args){
+                    return (Double)fcn.calculate(args.set(dt,size));
+                }
+            };
+        }
+        if (fcn instanceof ConstantMovementRateFunction){
+            return new Speed(){
+                @Override
+                public double calculate(double dt, double size, FunctionArgs args){
+                    return (Double)fcn.calculate(args.set(dt));
+                }
+            };
+        }
+        return new Speed(){
+            @Override
+            public double calculate(double dt, double size, FunctionArgs args){
+                return 0.0;
+            }
+        };
+    }
+}
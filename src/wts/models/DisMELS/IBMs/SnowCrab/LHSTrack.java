@@ -0,0 +1,273 @@
+/*
+ * LHSTrack.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.io.IOException;
+import wts.models.DisMELS.framework.LifeStageInterface;
+import wts.roms.gis.AlbersNAD83;
+
+/**
+ * The spatial track of a life stage instance, in projected (Albers NAD83) and
+ * geographic (lon, lat, -depth) coordinates, stored in primitive TrackBuffers.
+ *
+ * The snow crab life stages use this in place of the ArrayList&lt;Coordinate&gt;
+ * track and trackLL lists, so updating the track allocates no objects
+ * and copying it (in clone()) copies two primitive arrays.
+ *
+ * Only the geographic track is updated each time step. The projected track
+ * is derived from it when it is requested (getTrack, getLastPosition or
+ * project()); the projected points are cached, so each geographic point is
+ * transformed at most once unless it is replaced (as the last point is when
+ * only the first and last positions are kept).
+ *
+ * When the full track is kept, it can be decimated as it is built by passing
+ * a TrackDecimation policy to update().
+ *
+ * @author William Stockhausen
+ */
+public class LHSTrack {
+
+    /* encoder for track output */
+    private static TrackEncoder encoder = TrackEncoder.DECIMAL;
+
+    /**
+     * Sets the encoder used to write tracks (for the run).
+     *
+     * @param enc - the encoder (e.g., TrackEncoder.DECIMAL or TrackEncoder.POLYLINE)
+     */
+    public static void setTrackEncoder(TrackEncoder enc){
+        encoder = enc;
+    }
+
+    /**
+     * Gets the encoder used to write tracks.
+     *
+     * @return - the encoder
+     */
+    public static TrackEncoder getTrackEncoder(){
+        return encoder;
+    }
+
+    /* the spatial track in projected coordinates (cache derived from trackLL) */
+    private TrackBuffer track;
+    /* the spatial track in geographic coordinates */
+    private TrackBuffer trackLL;
+    /* number of leading points in track that are valid */
+    private int nProjected = 0;
+    /* flag indicating the first projected point was set by startTrack */
+    private boolean startProjected = false;
+    /* decimation policy last used to update the track */
+    private TrackDecimation decimation = null;
+    /* decimation state for the track */
+    private TrackDecimation.State decState = null;
+
+    /**
+     * Creates a new, empty track.
+     */
+    public LHSTrack(){
+        track   = new TrackBuffer();
+        trackLL = new TrackBuffer();
+    }
+
+    /**
+     * Returns an independent copy of the track.
+     *
+     * @return - the copy
+     */
+    public LHSTrack copy(){
+        LHSTrack cpy = new LHSTrack();
+        cpy.track   = track.copy();
+        cpy.trackLL = trackLL.copy();
+        cpy.nProjected     = nProjected;
+        cpy.startProjected = startProjected;
+        cpy.decimation     = decimation;
+        cpy.decState       = (decState==null) ? null : decState.copy();
+        return cpy;
+    }
+
+    /**
+     * Gets the buffer for a coordinate type. The projected track is brought
+     * up to date first.
+     *
+     * @param coordType - LifeStageInterface.COORDINATE_TYPE_PROJECTED or COORDINATE_TYPE_GEOGRAPHIC
+     * @return - the buffer, or null for other coordinate types
+     */
+    public TrackBuffer getBuffer(int coordType){
+        if (coordType==LifeStageInterface.COORDINATE_TYPE_PROJECTED)  {project(); return track;} else
+        if (coordType==LifeStageInterface.COORDINATE_TYPE_GEOGRAPHIC) return trackLL;
+        return null;
+    }
+
+    /**
+     * Removes all points from both tracks.
+     */
+    public void clear(){
+        track.clear();
+        trackLL.clear();
+        nProjected = 0;
+        startProjected = false;
+        if (decState!=null) decState.reset();
+    }
+
+    /**
+     * Transforms any geographic points that have not yet been projected.
+     * 
+     * AlbersNAD83 has no batch transform, so the points are transformed one at
+     * a time (each call returns a new array); what is saved is transforming
+     * each point only once, and only when the projected track is needed.
+     */
+    public void project(){
+        int n = trackLL.size();
+        if (nProjected>=n) return;
+        double[] ll = new double[2];
+        for (int k=nProjected;k<n;k++){
+            ll[0] = trackLL.getX(k);
+            ll[1] = trackLL.getY(k);
+            double[] xy = AlbersNAD83.transformGtoP(ll);
+            if (k<track.size()) track.set(k,xy[0],xy[1],Double.NaN);
+            else track.add(xy[0],xy[1],Double.NaN);
+        }
+        //drop any stale projected points beyond the end of the geographic track
+        while (track.size()>n) track.removeLast();
+        nProjected = n;
+    }
+
+    /**
+     * Adds the current position to the tracks. If keepAll is false, only
+     * the first and the current positions are retained.
+     *
+     * @param lon - longitude
+     * @param lat - latitude
+     * @param z   - vertical position (-depth)
+     * @param keepAll - flag to retain the full track
+     */
+    public void update(double lon, double lat, double z, boolean keepAll){
+        update(lon,lat,z,keepAll,null);
+    }
+
+    /**
+     * Adds the current position to the tracks. If keepAll is false, only
+     * the first and the current positions are retained. Otherwise, if a
+     * decimation policy is given, the previous position is dropped (replaced
+     * by the current one) unless the policy retains it.
+     *
+     * @param lon - longitude
+     * @param lat - latitude
+     * @param z   - vertical position (-depth)
+     * @param keepAll - flag to retain the full track
+     * @param policy  - decimation policy for the full track (null to retain all positions)
+     */
+    public void update(double lon, double lat, double z, boolean keepAll, TrackDecimation policy){
+        int n = trackLL.size();
+        if (keepAll&&(policy!=null)&&(n>=2)){
+            if (policy!=decimation){
+                decimation = policy;
+                decState = policy.createState();
+            }
+            if (!decState.retainLast(trackLL,lon,lat)){
+                //replace last coordinate with current location
+                trackLL.set(n-1,lon,lat,z);
+                if (nProjected>n-1) nProjected = n-1;
+                return;
+            }
+        }
+        if (keepAll||(n<2)){
+            //add current location to end of track
+            trackLL.add(lon,lat,z);
+        } else {
+            //replace 2nd coordinate with current location
+            trackLL.set(1,lon,lat,z);
+            if (nProjected>1) nProjected = 1;
+        }
+    }
+
+    /**
+     * Gets the last position in the track.
+     *
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as a new Coordinate
+     */
+    public Coordinate getLastPosition(int coordType){
+        if (coordType==LifeStageInterface.COORDINATE_TYPE_PROJECTED){
+            int n = trackLL.size();
+            if ((nProjected>=n-1)||(n==0)) return getBuffer(coordType).getLast();
+            //transform only the last point; the rest is left for project()
+            double[] dest = AlbersNAD83.transformGtoP(new double[]{trackLL.getX(n-1),trackLL.getY(n-1)});
+            return new Coordinate(dest[0],dest[1],Double.NaN);
+        }
+        TrackBuffer trk = getBuffer(coordType);
+        return (trk==null) ? null : trk.getLast();
+    }
+
+    /**
+     * Gets the track.
+     *
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as new Coordinate[]
+     */
+    public Coordinate[] getTrack(int coordType){
+        TrackBuffer trk = getBuffer(coordType);
+        return (trk==null) ? null : trk.toCoordinates();
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     *
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    public void startTrack(Coordinate initPos, int coordType){
+        if (coordType==LifeStageInterface.COORDINATE_TYPE_PROJECTED){
+            //keep the given projected position as the first projected point
+            track.clear();
+            track.add(initPos);
+            nProjected = 1;
+            startProjected = true;
+        } else
+        if (coordType==LifeStageInterface.COORDINATE_TYPE_GEOGRAPHIC){
+            trackLL.clear();
+            trackLL.add(initPos);
+            nProjected = startProjected ? 1 : 0;
+            if (decState!=null) decState.reset();
+        }
+    }
+
+    /**
+     * Returns the track information in string format, using the current
+     * track encoder.
+     *
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - the encoded track
+     */
+    public String toString(int coordType){
+        TrackBuffer trk = getBuffer(coordType);
+        if (trk==null) return "";
+        StringBuilder strb = new StringBuilder(16*trk.size()+16);
+        try {
+            encoder.encode(trk,strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+
+    /**
+     * Writes the track information in string format to an Appendable,
+     * using the current track encoder.
+     *
+     * @param out - the Appendable to write to
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @throws IOException
+     */
+    public void write(Appendable out, int coordType) throws IOException {
+        TrackBuffer trk = getBuffer(coordType);
+        if (trk==null) return;
+        encoder.encode(trk,out);
+    }
+}
@@ -8,14 +8,24 @@
 package wts.models.DisMELS.IBMs.SnowCrab.MaleAdolescent;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.FunctionArgs;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
+import wts.models.DisMELS.IBMs.SnowCrab.LHSTrack;
 import wts.models.DisMELS.IBMs.SnowCrab.MaleAdult.MaleAdult;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.ReportWriterInterface;
+import wts.models.DisMELS.IBMs.SnowCrab.RunOptions;
+import wts.models.DisMELS.IBMs.SnowCrab.TrackDecimation;
+import wts.models.DisMELS.IBMs.SnowCrab.YearDay;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.CalendarIF;
 import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 
@@ -26,7 +36,7 @@ import wts.roms.model.LagrangianParticle;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class MaleAdolescent extends AbstractLHS {
+public class MaleAdolescent extends AbstractLHS implements ReportWriterInterface {
     
         //Static fields    
             //  Static fields new to this class
@@ -44,13 +54,14 @@ public class MaleAdolescent extends AbstractLHS {
                                                                MaleAdult.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{};
-    
         //Instance fields
             //  Fields hiding ones from superclass
     /* lhs attributes */
     protected MaleAdolescentAttributes atts = null;
     /* lhs parameters */
     protected MaleAdolescentParameters params = null;
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
             //  Fields new to class
             //fields that reflect parameter values
     /** flag indicating instance is a super-individual */
@@ -102,6 +113,18 @@ public class MaleAdolescent extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** reusable argument buffers for IBM function calls */
+    private FunctionArgs fcnArgs = new FunctionArgs(rand);
+    /** packed id of the grid cell containing the individual (GridCellID.NONE if gridCellID was set directly) */
+    private long gridCell = GridCellID.NONE;
+    /** grid position (i,j,k) at which the position-derived values were last computed */
+    private double posI = Double.NaN, posJ = Double.NaN, posK = Double.NaN;
+    /** flag indicating instance fields have changed since the attributes were last updated */
+    private boolean attsDirty = false;
      /** day of year */
     private double dayOfYear;
      /** fecundity as number of spawned class objects to create */
@@ -119,6 +142,10 @@ public class MaleAdolescent extends AbstractLHS {
     private IBMFunctionInterface fcnMaturity = null; 
     /** IBM function selected for fecundity */
     private IBMFunctionInterface fcnFecundity = null; 
+    /** kernel for the selected growth function */
+    private IBMKernels.Growth kernGrowth = null;
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
     
     /** flag to print debugging info */
     public static boolean debug = false;
@@ -147,7 +174,7 @@ public class MaleAdolescent extends AbstractLHS {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (MaleAdolescentParameters) LHS_Factory.createParameters(typeName);
+        params = (MaleAdolescentParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParametersFromSubClass(params);//set object in the superclass
         setParameters(params);
     }
@@ -221,6 +248,7 @@ public class MaleAdolescent extends AbstractLHS {
      */
     @Override
     public MaleAdolescentAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -400,6 +428,9 @@ public class MaleAdolescent extends AbstractLHS {
         fcnMortality      = params.getSelectedIBMFunctionForCategory(MaleAdolescentParameters.FCAT_Mortality);
         fcnMaturity       = params.getSelectedIBMFunctionForCategory(MaleAdolescentParameters.FCAT_Maturity);
         fcnFecundity      = params.getSelectedIBMFunctionForCategory(MaleAdolescentParameters.FCAT_Fecundity);
+
+        kernGrowth        = IBMKernels.sizeGrowth(fcnGrowth);
+        kernMort          = IBMKernels.sizeMortality(fcnMortality);
     }
     
     /*
@@ -435,19 +466,23 @@ public class MaleAdolescent extends AbstractLHS {
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         MaleAdolescent clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone       = (MaleAdolescent) super.clone();
             clone.setAttributes((MaleAdolescentAttributes) atts.clone());
-            clone.setParameters((MaleAdolescentParameters) params.clone());
+            if (!ParameterSnapshots.isShared()) clone.setParameters((MaleAdolescentParameters) params.clone());//own IBM functions
             clone.lp    = (LagrangianParticle) lp.clone();
-            clone.track = (ArrayList<Coordinate>) track.clone();
+            clone.env   = new EnvironmentSample();
+            clone.rand    = new CounterRandom();
+            clone.fcnArgs = new FunctionArgs(clone.rand);
+            clone.track = track.copy();
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -498,6 +533,7 @@ public class MaleAdolescent extends AbstractLHS {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -516,11 +552,7 @@ public class MaleAdolescent extends AbstractLHS {
      * @param time
      */
     private void initializeTimedependentVariables() {
-        //temporarily set calendar time to variable time
-        CalendarIF cal = globalInfo.getCalendar();
-        long modTime = cal.getTimeOffset();
-        cal.setTimeOffset((long) time);
-        dayOfYear = cal.getYearDay();
+        dayOfYear = YearDay.getYearDay(time);
         
         //set up spawning
         isSpawningSeason = DateTimeFunctions.isBetweenDOY(dayOfYear,
@@ -534,22 +566,19 @@ public class MaleAdolescent extends AbstractLHS {
             doOnceAfterSpawningSeason = true;
             if (isBatchSpawner) {
                 if (randomizeSpawning) {
-                    timeToSpawn = rng.computeUniformVariate(0.0, meanTimeToSpawn);
+                    timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,meanTimeToSpawn);
                 } else {
                     timeToSpawn = meanTimeToSpawn;
                 }
             } else {
                 //spawn once
                 if (randomizeSpawning) {
-                    timeToSpawn = rng.computeUniformVariate(0.0, lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning));
+                    timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning));
                 } else {
                     timeToSpawn = (lengthOfSpawningSeason-(dayOfYear-firstDayOfSpawning))/2.0;
                 }
             }
         }
-        
-        //reset calendar time to model time
-        cal.setTimeOffset(modTime);
     }
 
     public void initialize() {
@@ -612,13 +641,13 @@ public class MaleAdolescent extends AbstractLHS {
         //Set up time of first spawning
         if (isBatchSpawner) {
             if (randomizeSpawning) {
-                timeToSpawn = rng.computeUniformVariate(0.0, meanTimeToSpawn)*DAY_SECS;
+                timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,meanTimeToSpawn)*DAY_SECS;
             } else {
                 timeToSpawn = meanTimeToSpawn;
             }
         } else {
             if (randomizeSpawning) {
-                timeToSpawn = rng.computeUniformVariate(0.0, lengthOfSpawningSeason)*DAY_SECS;
+                timeToSpawn = rand.at(id,time).computeUniformVariate(0.0,lengthOfSpawningSeason)*DAY_SECS;
             } else {
                 timeToSpawn = (lengthOfSpawningSeason/2.0)*DAY_SECS;
             }
@@ -628,7 +657,7 @@ public class MaleAdolescent extends AbstractLHS {
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
         //determine daytime/nighttime for vertical migration & calc indiv. W
-        dayOfYear = globalInfo.getCalendar().getYearDay();
+        dayOfYear = YearDay.getYearDay(time);
 //        isDaytime = DateTimeFunctions.isDaylight(lon,lat,dayOfYear);
         isSpawningSeason = DateTimeFunctions.isBetweenDOY(dayOfYear,firstDayOfSpawning,firstDayOfSpawning+lengthOfSpawningSeason);
         if (isSpawningSeason) {
@@ -641,6 +670,10 @@ public class MaleAdolescent extends AbstractLHS {
         }
         //TODO: implement movement here
         double[] pos;
+        if (attached&&(horizRWP<=0)&&RunOptions.getSkipAdvectionWhenAttached()){
+            //stationary on the bottom, ignoring bottom currents: skip the predictor/corrector steps
+            pos = lp.getIJK();
+        } else {
             double[] uv = calcUV(dt);
             lp.setU(uv[0],lp.getN());
             lp.setV(uv[1],lp.getN());
@@ -655,6 +688,7 @@ public class MaleAdolescent extends AbstractLHS {
             //now do corrector step
             lp.doCorrectorStep();
             pos = lp.getIJK();
+        }
         time = time+dt;
         updateSize(dt);
         updateNum(dt);
@@ -665,10 +699,11 @@ public class MaleAdolescent extends AbstractLHS {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -681,8 +716,8 @@ public class MaleAdolescent extends AbstractLHS {
         double[] uv = {0.0,0.0};
         if (horizRWP>0) {
             double r = Math.sqrt(horizRWP/Math.abs(dt));
-            uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-            uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+            uv[0] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+            uv[1] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
             if (debugOps) logger.info("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
         }
         uv[0] = Math.signum(dt)*uv[0];
@@ -702,7 +737,7 @@ public class MaleAdolescent extends AbstractLHS {
     private void updateSize(double dt) {
         //The following works for
         //  wts.models.DisMELS.IBMFunctions.Growth.vonBertalanffyGrowthFunction
-        size = (Double) fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
+        size = kernGrowth.calculate(dt,size,temperature,fcnArgs);
     }
 
     /**
@@ -713,7 +748,7 @@ public class MaleAdolescent extends AbstractLHS {
         //The following works for
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.PowerLawFunction
-        double mortalityRate = (Double)fcnMortality.calculate(size);//in unis of [days]^-1
+        double mortalityRate = kernMort.calculate(size);//in unis of [days]^-1
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)&&(size>=minSizeAtTrans)) {
             totRate += stageTransRate;
@@ -726,16 +761,25 @@ public class MaleAdolescent extends AbstractLHS {
     }
 
     private void updatePosition(double[] pos) {
-        depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat   = i3d.interpolateLat(pos);
-        lon   = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        if ((pos[0]==posI)&&(pos[1]==posJ)&&(pos[2]==0.0)&&(posK==0.0)){
+            //stationary on the bottom: reuse the position-derived values
+            env.sample(i3d,pos,EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+        } else {
+            //sample position-derived and environmental fields (reusing the cached horizontal fields)
+            env.sample(i3d,pos,EnvironmentSample.DEPTH|EnvironmentSample.LAT|EnvironmentSample.LON|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+            depth = env.depth;
+            lat   = env.lat;
+            lon   = env.lon;
+            gridCell = GridCellID.fromPosition(pos);
+            posI = pos[0]; posJ = pos[1]; posK = pos[2];
+        }
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
     }
 
     @Override
@@ -803,11 +847,80 @@ public class MaleAdolescent extends AbstractLHS {
         return isSuperIndividual;
     }
 
+    /**
+     * Gets the last position in the track of the instance.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as Coordinate
+     */
+    @Override
+    public Coordinate getLastPosition(int coordType) {
+        return track.getLastPosition(coordType);
+    }
+    
+    /**
+     * Gets the instance's track.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as Coordinate[]
+     */
+    @Override
+    public Coordinate[] getTrack(int coordType) {
+        return track.getTrack(coordType);
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     * 
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    @Override
+    public void startTrack(Coordinate initPos, int coordType) {
+        track.startTrack(initPos,coordType);
+    }
+
+    /**
+     * Returns the track information in string format.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return 
+     */
+    @Override
+    public String getTrackAsString(int coordType){
+        return track.toString(coordType);
+    }
+
+    /**
+     * Updates both types of tracks (projected and geographic).
+     */    
+    @Override
+    protected void updateTrack() {
+        track.update(lon,lat,-depth,getWriteTracksFlag(),TrackDecimation.getForClass(MaleAdolescent.class));
+    }
+
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -815,17 +928,29 @@ public class MaleAdolescent extends AbstractLHS {
         return atts.getCSVHeaderShortNames();
     }
     
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. The per-step update
+     * is deferred to here so that it is only done when the attributes are
+     * actually read (reports, transitions, spawning, customizers).
+     */
+    private void syncAttributes() {
+        if (attsDirty) updateAttributes();
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
     @Override
     protected void updateAttributes() {
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
         super.updateAttributes();
         atts.setValue(MaleAdolescentAttributes.PROP_gonadStage,gonadStage);
         atts.setValue(MaleAdolescentAttributes.PROP_size,size);
         atts.setValue(MaleAdolescentAttributes.PROP_weight,weight);
         atts.setValue(MaleAdolescentAttributes.PROP_salinity,salinity);
         atts.setValue(MaleAdolescentAttributes.PROP_temperature,temperature);
+        attsDirty = false;
     }
 
     /**
@@ -834,6 +959,8 @@ public class MaleAdolescent extends AbstractLHS {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        gridCell = GridCellID.parse(gridCellID);
+        posI = Double.NaN;//position-derived values may have changed
         gonadStage     = atts.getValue(MaleAdolescentAttributes.PROP_gonadStage,gonadStage);
         size    = atts.getValue(MaleAdolescentAttributes.PROP_size,size);
         weight     = atts.getValue(MaleAdolescentAttributes.PROP_weight,weight);
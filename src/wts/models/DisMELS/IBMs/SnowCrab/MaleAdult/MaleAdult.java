@@ -7,15 +7,20 @@
 
 package wts.models.DisMELS.IBMs.SnowCrab.MaleAdult;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
 import wts.models.DisMELS.IBMs.SnowCrab.AbstractBenthicStage;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.RunOptions;
+import wts.models.DisMELS.IBMs.SnowCrab.YearDay;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.CalendarIF;
 import wts.roms.model.LagrangianParticle;
 
 
@@ -41,7 +46,6 @@ public class MaleAdult extends AbstractBenthicStage {
     public static final String[] nextLHSClasses = new String[]{MaleAdult.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{};
-    
         //Instance fields
             //  Fields hiding ones from superclass
     /* lhs attributes */
@@ -63,6 +67,12 @@ public class MaleAdult extends AbstractBenthicStage {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** grid position (i,j,k) at which the position-derived values were last computed */
+    private double posI = Double.NaN, posJ = Double.NaN, posK = Double.NaN;
      /** day of year */
     private double dayOfYear;
    
@@ -70,6 +80,8 @@ public class MaleAdult extends AbstractBenthicStage {
     private IBMFunctionInterface fcnGrowth = null; 
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
     
     /** flag to print debugging info */
     public static boolean debug = false;
@@ -98,7 +110,7 @@ public class MaleAdult extends AbstractBenthicStage {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (MaleAdultParameters) LHS_Factory.createParameters(typeName);
+        params = (MaleAdultParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParametersFromSubClass(params);//set object in the superclass
         setParameters(params);
     }
@@ -172,6 +184,7 @@ public class MaleAdult extends AbstractBenthicStage {
      */
     @Override
     public MaleAdultAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -347,6 +360,8 @@ public class MaleAdult extends AbstractBenthicStage {
      */
     private void setIBMFunctions(){
         fcnMortality      = params.getSelectedIBMFunctionForCategory(MaleAdultParameters.FCAT_Mortality);
+
+        kernMort          = IBMKernels.sizeMortality(fcnMortality);
     }
     
     /*
@@ -362,19 +377,22 @@ public class MaleAdult extends AbstractBenthicStage {
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         MaleAdult clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone       = (MaleAdult) super.clone();
             clone.setAttributes((MaleAdultAttributes) atts.clone());
-            clone.setParameters((MaleAdultParameters) params.clone());
+            if (!ParameterSnapshots.isShared()) clone.setParameters((MaleAdultParameters) params.clone());//own IBM functions
             clone.lp    = (LagrangianParticle) lp.clone();
-            clone.track = (ArrayList<Coordinate>) track.clone();
+            clone.env   = new EnvironmentSample();
+            clone.rand  = new CounterRandom();
+            clone.track = track.copy();
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -426,6 +444,7 @@ public class MaleAdult extends AbstractBenthicStage {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -444,14 +463,7 @@ public class MaleAdult extends AbstractBenthicStage {
      * @param time
      */
     private void initializeTimedependentVariables() {
-        //temporarily set calendar time to variable time
-        CalendarIF cal = globalInfo.getCalendar();
-        long modTime = cal.getTimeOffset();
-        cal.setTimeOffset((long) time);
-        dayOfYear = cal.getYearDay();
-        
-        //reset calendar time to model time
-        cal.setTimeOffset(modTime);
+        dayOfYear = YearDay.getYearDay(time);
     }
 
     public void initialize() {
@@ -508,11 +520,15 @@ public class MaleAdult extends AbstractBenthicStage {
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
         //determine daytime/nighttime for vertical migration & calc indiv. W
-        dayOfYear = globalInfo.getCalendar().getYearDay();
+        dayOfYear = YearDay.getYearDay(time);
 //        isDaytime = DateTimeFunctions.isDaylight(lon,lat,dayOfYear);
         //movement here
         //TODO: revise so no advection by currents!
         double[] pos;
+        if (attached&&(horizRWP<=0)&&RunOptions.getSkipAdvectionWhenAttached()){
+            //stationary on the bottom, ignoring bottom currents: skip the predictor/corrector steps
+            pos = lp.getIJK();
+        } else {
             double[] uv = calcUV(dt);
             lp.setU(uv[0],lp.getN());
             lp.setV(uv[1],lp.getN());
@@ -527,6 +543,7 @@ public class MaleAdult extends AbstractBenthicStage {
             //now do corrector step
             lp.doCorrectorStep();
             pos = lp.getIJK();
+        }
         time = time+dt;
         updateSize(dt);
         updateNum(dt);
@@ -537,10 +554,11 @@ public class MaleAdult extends AbstractBenthicStage {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -553,8 +571,8 @@ public class MaleAdult extends AbstractBenthicStage {
         double[] uv = {0.0,0.0};
         if (horizRWP>0) {
             double r = Math.sqrt(horizRWP/Math.abs(dt));
-            uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-            uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+            uv[0] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+            uv[1] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
             if (debugOps) logger.info("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
         }
         uv[0] = Math.signum(dt)*uv[0];
@@ -584,7 +602,7 @@ public class MaleAdult extends AbstractBenthicStage {
         //The following works for
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction
         //  wts.models.DisMELS.IBMFunctions.Miscellaneous.PowerLawFunction
-        double mortalityRate = (Double)fcnMortality.calculate(size);//in unis of [days]^-1
+        double mortalityRate = kernMort.calculate(size);//in unis of [days]^-1
         double totRate = mortalityRate;
         //TODO: add in stage transitions, if necessary
 //        if ((ageInStage>=minStageDuration)&&(size>=minSizeAtTrans)) {
@@ -598,16 +616,25 @@ public class MaleAdult extends AbstractBenthicStage {
     }
 
     private void updatePosition(double[] pos) {
-        depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat   = i3d.interpolateLat(pos);
-        lon   = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        if ((pos[0]==posI)&&(pos[1]==posJ)&&(pos[2]==0.0)&&(posK==0.0)){
+            //stationary on the bottom: reuse the position-derived values
+            env.sample(i3d,pos,EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+        } else {
+            //sample position-derived and environmental fields (reusing the cached horizontal fields)
+            env.sample(i3d,pos,EnvironmentSample.DEPTH|EnvironmentSample.LAT|EnvironmentSample.LON|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY,time);
+            depth = env.depth;
+            lat   = env.lat;
+            lon   = env.lon;
+            gridCell = GridCellID.fromPosition(pos);
+            posI = pos[0]; posJ = pos[1]; posK = pos[2];
+        }
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
     }
 
     @Override
@@ -677,9 +704,26 @@ public class MaleAdult extends AbstractBenthicStage {
 
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -701,5 +745,6 @@ public class MaleAdult extends AbstractBenthicStage {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        posI = Double.NaN;//position-derived values may have changed
     }
 }
@@ -7,10 +7,12 @@
 
 package wts.models.DisMELS.IBMs.SnowCrab.MaleAdult;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
 import wts.models.DisMELS.IBMs.SnowCrab.AbstractBenthicStageAttributes;
+import wts.models.DisMELS.IBMs.SnowCrab.AttributeValueFormat;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttribute;
 
 /**
@@ -27,6 +29,8 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     protected static final Set<String> newKeys = new LinkedHashSet<>((int)(2*numNewAttributes));
     protected static final Set<String> allKeys = new LinkedHashSet<>((int)(2*(numAttributes+numNewAttributes)));
     protected static final Map<String,IBMAttribute> mapAllAttributes = new HashMap<>((int)(2*(numAttributes+numNewAttributes)));
+    /** map to thread-safe formats for attribute values */
+    protected static final Map<String,AttributeValueFormat> mapAllFormats = new HashMap<>((int)(2*(numAttributes+numNewAttributes)));
     protected static final String[] aKeys      = new String[numAttributes+numNewAttributes-1];//does not include typeName
     protected static final Class[]  classes    = new Class[numAttributes+numNewAttributes];
     protected static final String[] shortNames = new String[numAttributes+numNewAttributes];
@@ -58,7 +62,7 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     @Override
     public Object clone() {
         MaleAdultAttributes clone = new MaleAdultAttributes(typeName);
-        for (String key: allKeys) clone.setValue(key,this.getValue(key));
+        clone.copySlotsFrom(this);
         return clone;
     }
 
@@ -86,11 +90,11 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
             Iterator<String> it = allKeys.iterator();
             int j = 0; it.next();//skip typeName
             while (it.hasNext()) aKeys[j++] = it.next();
+            for (String k: allKeys) mapAllFormats.put(k,AttributeValueFormat.getInstance(mapAllAttributes.get(k)));
         }
         //set instance information
-        Map<String,Object> tmpMapValues = new HashMap<>((int)(2*(numNewAttributes+numAttributes)));
-        tmpMapValues.putAll(mapValues);//copy from super
-        mapValues = tmpMapValues;//assign to super
+        //--no new attributes, so the slot stores from the superclass are used as-is
+        //--(use extendSlots(...) here if attributes are added)
     }
 
     /**
@@ -121,16 +125,19 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     }
     
     /**
-     * Returns a CSV string representation of the attribute values.
+     * Writes the CSV representation of the attribute values to an Appendable.
+     * getCSV() in the superclass is a wrapper around this method.
      * 
-     *@return - CSV string attribute values
+     * @param out - the Appendable to write to
+     * @throws IOException 
      */
     @Override
-    public String getCSV() {
-        String str = super.getCSV();
-        Iterator<String> it = newKeys.iterator();
-        while (it.hasNext()) str = str+cc+getValueAsString(it.next());
-        return str;
+    public void writeCSV(Appendable out) throws IOException {
+        super.writeCSV(out);
+        for (String key: newKeys) {
+            out.append(cc);
+            getFormat(key).append(out,getValue(key));
+        }
     }
                 
     /**
@@ -143,9 +150,9 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     @Override
     public String getCSVHeader() {
         Iterator<String> it = allKeys.iterator();
-        String str = it.next();//typeName
-        while (it.hasNext()) str = str+cc+it.next();
-        return str;
+        StringBuilder strb = new StringBuilder(it.next());//typeName
+        while (it.hasNext()) strb.append(cc).append(it.next());
+        return strb.toString();
     }
                 
     /**
@@ -157,9 +164,9 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     @Override
     public String getCSVHeaderShortNames() {
         Iterator<String> it = allKeys.iterator();
-        String str = mapAllAttributes.get(it.next()).shortName;//this is "typeName"
-        while (it.hasNext()) str = str+cc+mapAllAttributes.get(it.next()).shortName;
-        return str;
+        StringBuilder strb = new StringBuilder(mapAllAttributes.get(it.next()).shortName);//this is "typeName"
+        while (it.hasNext()) strb.append(cc).append(mapAllAttributes.get(it.next()).shortName);
+        return strb.toString();
     }
 
     /**
@@ -263,20 +270,7 @@ public class MaleAdultAttributes extends AbstractBenthicStageAttributes {
     }
     
     @Override
-    public String getValueAsString(String key){
-        Object val = getValue(key);
-        IBMAttribute att = mapAllAttributes.get(key);
-        att.setValue(val);
-        String str = att.getValueAsString();
-        return str;
-    }
-    
-    @Override
-    public void setValueFromString(String key, String value) throws NumberFormatException {
-        if (!key.equals(PROP_typeName)){
-            IBMAttribute att = mapAllAttributes.get(key);
-            att.parseValue(value);
-            setValue(key,att.getValue());
-        }
+    protected AttributeValueFormat getFormat(String key){
+        return mapAllFormats.get(key);
     }
 }
@@ -8,20 +8,25 @@
 package wts.models.DisMELS.IBMs.SnowCrab.Megalopa;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
-import wts.models.DisMELS.IBMFunctions.Growth.ExponentialGrowthFunction;
-import wts.models.DisMELS.IBMFunctions.Growth.LinearGrowthFunction;
-import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
-import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
-import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRate_Houde1989;
+import wts.models.DisMELS.IBMs.SnowCrab.CounterRandom;
+import wts.models.DisMELS.IBMs.SnowCrab.EnvironmentSample;
+import wts.models.DisMELS.IBMs.SnowCrab.FunctionArgs;
+import wts.models.DisMELS.IBMs.SnowCrab.GridCellID;
+import wts.models.DisMELS.IBMs.SnowCrab.IBMKernels;
 import wts.models.DisMELS.IBMs.SnowCrab.FemaleImmature.FemaleImmature;
+import wts.models.DisMELS.IBMs.SnowCrab.LHSTrack;
 import wts.models.DisMELS.IBMs.SnowCrab.MaleImmature.MaleImmature;
+import wts.models.DisMELS.IBMs.SnowCrab.ParameterSnapshots;
+import wts.models.DisMELS.IBMs.SnowCrab.ReportWriterInterface;
+import wts.models.DisMELS.IBMs.SnowCrab.SolarGeometry;
+import wts.models.DisMELS.IBMs.SnowCrab.TrackDecimation;
+import wts.models.DisMELS.IBMs.SnowCrab.YearDay;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
-import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 
 /**
@@ -29,7 +34,7 @@ import wts.roms.model.LagrangianParticle;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class MegalopaStage extends AbstractLHS {
+public class MegalopaStage extends AbstractLHS implements ReportWriterInterface {
     
         //Static fields    
             //  Static fields new to this class
@@ -50,13 +55,14 @@ public class MegalopaStage extends AbstractLHS {
                                                                MaleImmature.class.getName()};
     /* Classes for spawned LHS */
     public static final String[] spawnedLHSClasses = new String[]{};
-    
     //Instance fields
             //  Fields hiding ones from superclass
     /* life stage atrbutes object */
     protected MegalopaStageAttributes atts = null;
     /* life stage parameters object */
     protected MegalopaStageParameters params = null;
+    /* the spatial track in projected and geographic coordinates for the LHS */
+    protected LHSTrack track = new LHSTrack();
     
     //  Fields new to class
         //fields that reflect parameter values
@@ -98,6 +104,16 @@ public class MegalopaStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** reusable record of the environment at the individual's position */
+    private EnvironmentSample env = new EnvironmentSample();
+    /** counter-based random numbers for this individual */
+    private CounterRandom rand = new CounterRandom();
+    /** reusable argument buffers for IBM function calls */
+    private FunctionArgs fcnArgs = new FunctionArgs(rand);
+    /** packed id of the grid cell containing the individual (GridCellID.NONE if gridCellID was set directly) */
+    private long gridCell = GridCellID.NONE;
+    /** flag indicating instance fields have changed since the attributes were last updated */
+    private boolean attsDirty = false;
     /** total depth (m) at individual's position */
     private double totalDepth;
     
@@ -109,6 +125,14 @@ public class MegalopaStage extends AbstractLHS {
     private IBMFunctionInterface fcnVM = null; 
     /** IBM function selected for vertical velocity */
     private IBMFunctionInterface fcnVV = null; 
+    /** kernel for the selected growth function */
+    private IBMKernels.Growth kernGrowth = null;
+    /** kernel for the selected mortality function */
+    private IBMKernels.Rate kernMort = null;
+    /** kernel for the selected vertical velocity function */
+    private IBMKernels.Speed kernVV = null;
+    /** flag indicating the selected vertical movement function is DielVerticalMigration_FixedDepthRanges */
+    private boolean useDVM = false;
     
     /** logger for class */
     private static final Logger logger = Logger.getLogger(MegalopaStage.class.getName());
@@ -142,7 +166,7 @@ public class MegalopaStage extends AbstractLHS {
         atts.setValue(LifeStageAttributesInterface.PROP_parentID,id);
         atts.setValue(LifeStageAttributesInterface.PROP_origID,id);
         setAttributesFromSubClass(atts);  //set object in the superclass
-        params = (MegalopaStageParameters) LHS_Factory.createParameters(typeName);
+        params = (MegalopaStageParameters) ParameterSnapshots.get(typeName);//shared by all individuals of the type
         setParameters(params);
     }
 
@@ -215,6 +239,7 @@ public class MegalopaStage extends AbstractLHS {
      */
     @Override
     public MegalopaStageAttributes getAttributes() {
+        syncAttributes();//write back any changed instance fields
         return atts;
     }
 
@@ -387,6 +412,11 @@ public class MegalopaStage extends AbstractLHS {
         fcnMort    = params.getSelectedIBMFunctionForCategory(MegalopaStageParameters.FCAT_Mortality);
         fcnVM      = params.getSelectedIBMFunctionForCategory(MegalopaStageParameters.FCAT_VerticalMovement);
         fcnVV      = params.getSelectedIBMFunctionForCategory(MegalopaStageParameters.FCAT_VerticalVelocity);
+        //resolve how the functions are called once, rather than every time step
+        kernGrowth = IBMKernels.growth(fcnGrowth);
+        kernMort   = IBMKernels.mortality(fcnMort);
+        kernVV     = IBMKernels.swimmingSpeed(fcnVV);
+        useDVM     = (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges);
     }
     
     /*
@@ -414,20 +444,23 @@ public class MegalopaStage extends AbstractLHS {
     }
     
     /**
-     *  Provides a copy of the object.  The attributes and parameters
-     *  are cloned in the process, so the clone is independent of the
-     *  original.
+     *  Provides a copy of the object.  The attributes are cloned in the 
+     *  process, so the clone is independent of the original, but the
+     *  parameters (which are not changed by individuals) are shared.
      */
     @Override
     public Object clone() {
         MegalopaStage clone = null;
         try {
+            syncAttributes();//make sure attributes are up to date before copying
             clone = (MegalopaStage) super.clone();
             clone.setAttributes(atts);//this clones atts
-            clone.setParameters(params);//this clones params
+            if (!ParameterSnapshots.isShared()) clone.setParameters((MegalopaStageParameters) params.clone());//own IBM functions
             clone.lp      = (LagrangianParticle) lp.clone();
-            clone.track   = (ArrayList<Coordinate>) track.clone();
-            clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.env     = new EnvironmentSample();
+            clone.rand    = new CounterRandom();
+            clone.fcnArgs = new FunctionArgs(clone.rand);
+            clone.track   = track.copy();
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -487,6 +520,7 @@ public class MegalopaStage extends AbstractLHS {
                 nLHSs = LHS_Factory.createNextLHSsFromIndividual(typeName,this);
                 alive  = false; //allow only 1 transition, so kill this stage
                 active = false; //set stage inactive, also
+                attsDirty = true;
             }
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
@@ -554,7 +588,6 @@ public class MegalopaStage extends AbstractLHS {
             lp.setIJK(IJ[0],IJ[1],K);
             //reset track array
             track.clear();
-            trackLL.clear();
             //set horizType to lat/lon and vertType to depth
             atts.setValue(LifeStageAttributesInterface.PROP_horizType,Types.HORIZ_LL);
             atts.setValue(LifeStageAttributesInterface.PROP_vertType,Types.VERT_H);
@@ -608,10 +641,11 @@ public class MegalopaStage extends AbstractLHS {
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
+            gridCell = GridCellID.NONE;
             gridCellID=i3d.getGridCellID(pos, tolGridEdge);
             logger.info("Indiv "+id+" exited grid at ["+pos[0]+","+pos[1]+"]: "+gridCellID);
         }
-        updateAttributes(); //update the attributes object w/ nmodified values
+        attsDirty = true; //defer updating the attributes object until it is read
     }
     
     /**
@@ -622,46 +656,20 @@ public class MegalopaStage extends AbstractLHS {
      */
     public double[] calcUVW(double[] pos, double dt) {
         //compute vertical velocity
-        double w = 0;
         //calculate the vertical movement rate
-        if (fcnVV instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.PowerLawSwimmingSpeedFunction) {
-            /**
-            * @param vars - the inputs variables as a double[]{dt,z}.
-            *      dt - [0] - integration time step
-            *      z  - [1] - size of individual
-            */
-            w = (Double) fcnVV.calculate(new double[]{dt,size});
-        } else
-        if (fcnVV instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction) {
-            /**
-            * @param vars - double[]{dt}.
-            * @return     - movement rate as a Double 
-            */
-            w = (Double) fcnVV.calculate(new double[]{dt});
-        }
+        double w = kernVV.calculate(dt,size,fcnArgs);
         
         if ((minSettlementDepth<=totalDepth)&&(totalDepth<=maxSettlementDepth)){
             //individual will swim down to bottom to settle
             w = -Math.abs(w);
             attached = false;
         } else
-        if (fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges) {            
+        if (useDVM) {            
             /**
-            * Compute time of local sunrise, sunset and solar noon (in minutes, UTC) 
-            * for given lon, lat, and time (in Julian day-of-year).
-            *@param lon : longitude of position (deg Greenwich, prime meridian)
-            *@param lat : latitude of position (deg)
-            *@param time : day-of-year (1-366, fractional part indicates time-of-day)
-            *@return double[5] = [0] time of sunrise (min UTC from midnight)
-            *                    [1] time of sunset (min UTC from midnight)
-            *                    [2] time of solarnoon (min UTC from midnight)
-            *                    [3] solar declination angle (deg)
-            *                    [4] solar zenith angle (deg)
-            * If sunrise/sunset=NaN then its either 24-hr day or night 
-            * (if lat*declination>0, it's summer in the hemisphere, hence daytime). 
-            * Alternatively, if the solar zenith angle > 90.833 deg, then it is night.
+            * Light level (90.833 deg minus the solar zenith angle; >= 0 indicates daytime)
+            * from the solar geometry shared by all individuals during the time step.
             */
-            double[] ss = DateTimeFunctions.computeSunriseSunset(lon,lat,globalInfo.getCalendar().getYearDay());
+            double lightLevel = SolarGeometry.getLightLevel(lon,lat,YearDay.getYearDay(time));
             /**
             * @param vars - the inputs variables as a double[] array with elements
             *                  dt          - [0] - integration time step
@@ -673,7 +681,7 @@ public class MegalopaStage extends AbstractLHS {
             *              w        - individual active vertical movement velocity
             *              attached - flag indicating whether individual is attached to bottom(< 0) or not (>0)
             */
-            double[] res = (double[]) fcnVM.calculate(new double[]{dt,depth,totalDepth,w,90.833-ss[4]});
+            double[] res = (double[]) fcnVM.calculate(fcnArgs.set(dt,depth,totalDepth,w,lightLevel));
             w = res[0];
             attached = res[1]<0;
             if (attached) pos[2] = 0;//set individual on bottom
@@ -684,8 +692,8 @@ public class MegalopaStage extends AbstractLHS {
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                uv[0] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
+                uv[1] += r*rand.at(id,time).computeNormalVariate(); //stochastic swimming rate
                 if (debugOps) logger.info("id: "+id+"; r, uv: "+r+", {"+uv[0]+", "+uv[1]+"}\n");
             }
         }
@@ -712,24 +720,7 @@ public class MegalopaStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateSize(double dt) {
-        if (fcnGrowth instanceof ExponentialGrowthFunction){
-            /**
-             * @param vars - the inputs variables, dt (in days) and z0, as a double[].
-             * @return     - the function value (z[dt]) as a Double 
-             */
-            size = (Double)fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
-        } else
-        if (fcnGrowth instanceof LinearGrowthFunction){
-            /**
-             * @param vars - the inputs variables, z0 and dt, as a double[].
-             * @return     - the function value (z[dt]) as a Double 
-             */
-            size = (Double)fcnGrowth.calculate(new double[]{dt/DAY_SECS,size});
-        } else
-        if (fcnGrowth instanceof ConstantFunction){
-            double rate = (Double)fcnGrowth.calculate(null);
-            size += rate*dt/DAY_SECS;
-        }
+        size = kernGrowth.calculate(dt,size,temperature,fcnArgs);
     }
 
     /**
@@ -737,21 +728,7 @@ public class MegalopaStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
-        double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (fcnMort instanceof ConstantMortalityRate){
-            /**
-             * @param vars - null
-             * @return     - Double - the corresponding mortality rate (per day) 
-             */
-            mortalityRate = (Double)fcnMort.calculate(null);
-        } else 
-        if (fcnMort instanceof TemperatureDependentMortalityRate_Houde1989){
-            /**
-             * @param vars - Double - temperature (deg C)
-             * @return     - Double - the corresponding mortality rate (per day) 
-             */
-            mortalityRate = (Double)fcnMort.calculate(temperature);//using temperature as covariate for mortality
-        }
+        double mortalityRate = kernMort.calculate(temperature);//in unis of [days]^-1
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
@@ -764,17 +741,20 @@ public class MegalopaStage extends AbstractLHS {
     }
     
     private void updatePosition(double[] pos) {
-        totalDepth = i3d.interpolateBathymetricDepth(pos);
-        depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-        lat        = i3d.interpolateLat(pos);
-        lon        = i3d.interpolateLon(pos);
-        gridCellID = ""+Math.round(pos[0])+"_"+Math.round(pos[1]);
+        //sample position-derived and environmental fields (reusing the cached horizontal fields)
+        env.sample(i3d,pos,EnvironmentSample.POSITION|EnvironmentSample.TEMPERATURE|EnvironmentSample.SALINITY);
+        totalDepth = env.bathymetricDepth;
+        depth      = env.depth;
+        lat        = env.lat;
+        lon        = env.lon;
+        gridCell = GridCellID.fromPosition(pos);
         updateTrack();
     }
     
     private void interpolateEnvVars(double[] pos) {
-        temperature = i3d.interpolateTemperature(pos);
-        salinity    = i3d.interpolateSalinity(pos);
+        //values were sampled at pos in updatePosition
+        temperature = env.temperature;
+        salinity    = env.salinity;
     }
 
     @Override
@@ -848,11 +828,80 @@ public class MegalopaStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Gets the last position in the track of the instance.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - last position as Coordinate
+     */
+    @Override
+    public Coordinate getLastPosition(int coordType) {
+        return track.getLastPosition(coordType);
+    }
+    
+    /**
+     * Gets the instance's track.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return - track as Coordinate[]
+     */
+    @Override
+    public Coordinate[] getTrack(int coordType) {
+        return track.getTrack(coordType);
+    }
+
+    /**
+     * Clears the existing track and restarts it with the new initial position.
+     * 
+     * @param initPos - new starting position.
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     */
+    @Override
+    public void startTrack(Coordinate initPos, int coordType) {
+        track.startTrack(initPos,coordType);
+    }
+
+    /**
+     * Returns the track information in string format.
+     * 
+     * @param coordType - type of coordinates requested (e.g. grid or lat/lon)
+     * @return 
+     */
+    @Override
+    public String getTrackAsString(int coordType){
+        return track.toString(coordType);
+    }
+
+    /**
+     * Updates both types of tracks (projected and geographic).
+     */    
+    @Override
+    protected void updateTrack() {
+        track.update(lon,lat,-depth,getWriteTracksFlag(),TrackDecimation.getForClass(MegalopaStage.class));
+    }
+
     @Override
     public String getReport() {
+        StringBuilder strb = new StringBuilder(512);
+        try {
+            writeReport(strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+    
+    @Override
+    public void writeReport(Appendable out) throws IOException {
+        getReportAttributes();//make sure attributes (including the track) are up to date
+        atts.writeCSV(out);
+    }
+
+    @Override
+    public LifeStageAttributesInterface getReportAttributes() {
         updateAttributes();//make sure attributes are up to date
         atts.setValue(LifeStageAttributesInterface.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        return atts;
     }
 
     @Override
@@ -860,16 +909,28 @@ public class MegalopaStage extends AbstractLHS {
         return atts.getCSVHeaderShortNames();
     }
     
+    /**
+     * Updates the attributes object from the instance fields, but only if
+     * the fields have changed since the last update. The per-step update
+     * is deferred to here so that it is only done when the attributes are
+     * actually read (reports, transitions, spawning, customizers).
+     */
+    private void syncAttributes() {
+        if (attsDirty) updateAttributes();
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
     @Override
     protected void updateAttributes() {
+        if (gridCell!=GridCellID.NONE) gridCellID = GridCellID.toString(gridCell);
         super.updateAttributes();
         atts.setValue(MegalopaStageAttributes.PROP_size,size);
         atts.setValue(MegalopaStageAttributes.PROP_weight,weight);
         atts.setValue(MegalopaStageAttributes.PROP_salinity,salinity);
         atts.setValue(MegalopaStageAttributes.PROP_temperature,temperature);
+        attsDirty = false;
     }
 
     /**
@@ -878,6 +939,7 @@ public class MegalopaStage extends AbstractLHS {
     @Override
     protected void updateVariables() {
         super.updateVariables();
+        gridCell = GridCellID.parse(gridCellID);
         size        = atts.getValue(MegalopaStageAttributes.PROP_size,size);
         weight      = atts.getValue(MegalopaStageAttributes.PROP_weight,weight);
         salinity    = atts.getValue(MegalopaStageAttributes.PROP_salinity,salinity);
@@ -0,0 +1,149 @@
+/*
+ * ParallelReportWriter.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Generates the reports for a time step using several threads.
+ *
+ * The list of individuals is split into contiguous chunks of a bounded size,
+ * the reports for each chunk are written into a separate buffer on a worker
+ * thread, and the buffers are then appended to the output in the original
+ * order, so the output is identical to writing the reports sequentially. At
+ * most two chunks per thread are in progress or waiting to be appended at any
+ * time, so the memory used for buffers is bounded by the chunk size rather
+ * than growing with the number of individuals. Attribute values are formatted
+ * with AttributeValueFormat, so no shared mutable formatter is involved.
+ *
+ * @author William Stockhausen
+ */
+public class ParallelReportWriter {
+
+    /** line separator written after each report */
+    private static final String EOL = System.getProperty("line.separator");
+    /** default number of individuals per chunk */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+    /** expected report length (chars) used to size the chunk buffers */
+    private static final int REPORT_LENGTH = 512;
+    /** max initial capacity of a chunk buffer (chars) */
+    private static final int MAX_INITIAL_CAPACITY = 1<<20;
+
+    /** thread pool used to generate the reports */
+    private final ExecutorService exec;
+    /** number of threads */
+    private final int nThreads;
+    /** max number of individuals per chunk */
+    private final int chunkSize;
+
+    /**
+     * Creates a new writer using a fixed-size thread pool and the default
+     * chunk size.
+     *
+     * @param nThreads - number of threads to use
+     */
+    public ParallelReportWriter(int nThreads){
+        this(nThreads,DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new writer using a fixed-size thread pool.
+     *
+     * @param nThreads  - number of threads to use
+     * @param chunkSize - max number of individuals whose reports are buffered together
+     */
+    public ParallelReportWriter(int nThreads, int chunkSize){
+        this.nThreads  = Math.max(1,nThreads);
+        this.chunkSize = Math.max(1,chunkSize);
+        exec = Executors.newFixedThreadPool(this.nThreads);
+    }
+
+    /**
+     * Writes the reports for the individuals to the output, one per line,
+     * in list order.
+     *
+     * @param lhss - individuals to report on
+     * @param out  - the Appendable to write to
+     * @throws IOException
+     */
+    public void writeReports(final List<? extends LifeStageInterface> lhss, Appendable out) throws IOException {
+        int n = lhss.size();
+        if (n==0) return;
+        int maxPending = 2*nThreads;
+        Deque<Future<StringBuilder>> pending = new ArrayDeque<>(maxPending);
+        try {
+            int i0 = 0;
+            while (i0<n){
+                int i1 = (int) Math.min(n,(long) i0+chunkSize);
+                //append the oldest chunk before submitting another once the window is full
+                if (pending.size()>=maxPending) out.append(pending.removeFirst().get());
+                pending.addLast(exec.submit(new Chunk(lhss,i0,i1)));
+                i0 = i1;
+            }
+            while (!pending.isEmpty()) out.append(pending.removeFirst().get());
+        } catch (InterruptedException | ExecutionException ex) {
+            for (Future<StringBuilder> f: pending) f.cancel(true);
+            throw new IOException("Error generating reports",ex);
+        }
+    }
+
+    /**
+     * Shuts down the thread pool.
+     */
+    public void shutdown(){
+        exec.shutdown();
+    }
+
+    /**
+     * Writes the report for a single individual, followed by a line separator.
+     *
+     * @param lhs - the individual
+     * @param out - the Appendable to write to
+     * @throws IOException
+     */
+    public static void writeReport(LifeStageInterface lhs, Appendable out) throws IOException {
+        if (lhs instanceof ReportWriterInterface) {
+            ((ReportWriterInterface) lhs).writeReport(out);
+        } else {
+            out.append(lhs.getReport());
+        }
+        out.append(EOL);
+    }
+
+    /**
+     * Writes the reports for the individuals [i0,i1) into a new buffer.
+     */
+    private static class Chunk implements Callable<StringBuilder> {
+        private final List<? extends LifeStageInterface> lhss;
+        private final int i0;
+        private final int i1;
+
+        Chunk(List<? extends LifeStageInterface> lhss, int i0, int i1){
+            this.lhss = lhss;
+            this.i0 = i0;
+            this.i1 = i1;
+        }
+
+        @Override
+        public StringBuilder call() throws IOException {
+            long cap = (long) REPORT_LENGTH*(i1-i0);
+            StringBuilder strb = new StringBuilder((int) Math.min(cap,MAX_INITIAL_CAPACITY));
+            for (int i=i0;i<i1;i++) writeReport(lhss.get(i),strb);
+            return strb;
+        }
+    }
+}
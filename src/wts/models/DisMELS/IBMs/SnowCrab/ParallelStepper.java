@@ -0,0 +1,186 @@
+/*
+ * ParallelStepper.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import wts.models.DisMELS.IBMs.SnowCrab.FemaleMultiparous.SpawningQuota;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Steps the live population of SnowCrab life stages in parallel on a fork/join pool.
+ * 
+ * The list of individuals is split into fixed-size chunks, which are stepped
+ * concurrently. Each chunk draws its random numbers from its own StageRandom.Stream,
+ * seeded from the run seed, the time step index and the chunk index, so results
+ * do not depend on the number of threads or on which thread steps which chunk:
+ * for the same seed, list order and chunk size, repeated runs give identical
+ * results. Only step() is called in parallel; transitions, spawning and output
+ * should be done serially afterwards, as before.
+ * 
+ * The stages keep all per-step scratch data (environment samples, argument
+ * buffers, tracks) in instance fields, and the shared caches (SolarGeometry,
+ * BottomEnvironmentCache) are kept per thread. A stepper with more than one
+ * thread turns off parameter sharing (ParameterSnapshots.setShared(false)), so
+ * individuals created afterwards have their own IBM function instances; create
+ * the stepper before the individuals. A stepper also starts a new run of the
+ * SpawningQuota when it is created, and a new quota time step in each step().
+ * The shared Interpolator3D and 
+ * model calendar are only read during step(), so they must not be changed while
+ * a parallel step is in progress.
+ * 
+ * NOTE: the thread-safety of Interpolator3D (from the ROMS library) has NOT been
+ * verified. Its interpolation methods are called concurrently from all threads;
+ * if it keeps any mutable scratch state (e.g., reused index or weight arrays, or
+ * lazily-read fields), parallel steps may give wrong results. Until it has been
+ * checked (e.g., by comparing serial and parallel runs of a full model), use a
+ * single thread for production runs. ParallelStepperTest checks the stepper's own
+ * determinism (serial vs. parallel, same seed) with stand-in individuals only; it
+ * does not step the real stages. So a stepper with more than one thread can only
+ * be created once parallel stepping has been verified for the model setup and 
+ * this has been declared with setThreadSafetyVerified(true).
+ *
+ * @author William Stockhausen
+ */
+public class ParallelStepper {
+
+    /** default number of individuals per chunk */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    /** flag indicating parallel stepping has been verified for the model setup */
+    private static volatile boolean threadSafetyVerified = false;
+
+    /** the pool */
+    private final ForkJoinPool pool;
+    /** number of individuals per chunk */
+    private final int chunkSize;
+    /** seed for the random streams */
+    private final long seed;
+    /** number of time steps taken */
+    private long nSteps = 0;
+
+    /**
+     * Sets the flag indicating parallel stepping has been verified for the
+     * model setup (e.g., by comparing serial and parallel runs of the full
+     * model). Steppers with more than one thread can only be created if it is set.
+     *
+     * @param b - true if verified
+     */
+    public static void setThreadSafetyVerified(boolean b){
+        threadSafetyVerified = b;
+    }
+
+    /**
+     * Gets the flag indicating parallel stepping has been verified for the
+     * model setup.
+     *
+     * @return - true if verified
+     */
+    public static boolean isThreadSafetyVerified(){
+        return threadSafetyVerified;
+    }
+
+    /**
+     * Creates a stepper using all available processors (which requires
+     * parallel stepping to have been verified, if there is more than one).
+     *
+     * @param seed - seed for the random streams
+     */
+    public ParallelStepper(long seed){
+        this(Runtime.getRuntime().availableProcessors(),DEFAULT_CHUNK_SIZE,seed);
+    }
+
+    /**
+     * Creates a stepper.
+     *
+     * @param nThreads  - number of threads
+     * @param chunkSize - number of individuals per chunk
+     * @param seed      - seed for the random streams
+     * @throws IllegalStateException if nThreads>1 and parallel stepping has not been verified
+     */
+    public ParallelStepper(int nThreads, int chunkSize, long seed){
+        if (chunkSize<1) throw new IllegalArgumentException("Chunk size must be >= 1: "+chunkSize);
+        if ((nThreads>1)&&!threadSafetyVerified) 
+            throw new IllegalStateException("Parallel stepping ("+nThreads+" threads) has not been verified "+
+                                            "for this model setup; see ParallelStepper.setThreadSafetyVerified().");
+        if (nThreads>1) ParameterSnapshots.setShared(false);//individuals must not share IBM functions across threads
+        pool = new ForkJoinPool(nThreads);
+        this.chunkSize = chunkSize;
+        this.seed = seed;
+        SpawningQuota.startRun();
+    }
+
+    /**
+     * Steps all active individuals in the list by dt, starting a new
+     * SpawningQuota time step first.
+     *
+     * @param lhss - the individuals
+     * @param dt   - time step (s)
+     */
+    public void step(List<? extends LifeStageInterface> lhss, double dt){
+        SpawningQuota.getInstance().startStep();
+        int nChunks = (lhss.size()+chunkSize-1)/chunkSize;
+        if (nChunks>0) pool.invoke(new StepTask(lhss,dt,nSteps,0,nChunks));
+        nSteps++;
+    }
+
+    /**
+     * Gets the number of time steps taken.
+     *
+     * @return - the number of steps
+     */
+    public long getStepCount(){
+        return nSteps;
+    }
+
+    /**
+     * Shuts down the pool.
+     */
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Task stepping chunks c0 (inclusive) to c1 (exclusive).
+     */
+    private class StepTask extends RecursiveAction {
+        private final List<? extends LifeStageInterface> lhss;
+        private final double dt;
+        private final long step;
+        private final int c0, c1;
+
+        StepTask(List<? extends LifeStageInterface> lhss, double dt, long step, int c0, int c1){
+            this.lhss = lhss;
+            this.dt = dt;
+            this.step = step;
+            this.c0 = c0;
+            this.c1 = c1;
+        }
+
+        @Override
+        protected void compute(){
+            if (c1-c0>1){
+                int cm = (c0+c1)>>>1;
+                invokeAll(new StepTask(lhss,dt,step,c0,cm),new StepTask(lhss,dt,step,cm,c1));
+                return;
+            }
+            StageRandom.Stream prev = StageRandom.getStream();
+            StageRandom.setStream(StageRandom.Stream.forTask(seed,step,c0));
+            try {
+                int n = Math.min(lhss.size(),(c0+1)*chunkSize);
+                for (int i=c0*chunkSize;i<n;i++){
+                    LifeStageInterface lhs = lhss.get(i);
+                    if (lhs.isActive()) lhs.step(dt);
+                }
+            } finally {
+                StageRandom.setStream(prev);
+            }
+        }
+    }
+}
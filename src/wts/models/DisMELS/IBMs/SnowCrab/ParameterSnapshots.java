@@ -0,0 +1,191 @@
+/*
+ * ParameterSnapshots.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import wts.models.DisMELS.framework.LHS_Factory;
+import wts.models.DisMELS.framework.LifeStageParametersInterface;
+
+/**
+ * Parameter objects shared by all individuals of a life stage type.
+ *
+ * The stages used to get a new parameters object from LHS_Factory.createParameters()
+ * in every constructor (and to clone it in clone()), so each individual carried
+ * its own copy of identical parameter values and IBM function instances. Instead,
+ * the stages now get the current snapshot for their type name from get(): one
+ * parameters object per type name, created from the factory the first time it is
+ * needed and shared by all individuals of the type (and their clones).
+ *
+ * Snapshots are treated as immutable: they must not be edited in place. When any
+ * other parameters object for a type is edited (e.g., the factory's parameters,
+ * through the GUI), the parameters classes call edited(), which discards the
+ * type's snapshot so the next get() takes a new one from the factory. Only the
+ * mutators report edits: setValue(), selectIBMFunctionForCategory() and
+ * setFunctionParameter() (the copy-on-write path for IBM function parameters);
+ * reads, including getIBMFunction() and the copying done by clone(), do not.
+ * Function parameters set directly on a function obtained from getIBMFunction()
+ * are not detected; call refresh() for the type after such edits. A new
+ * parameters object can also be set explicitly with publish(), or a new snapshot
+ * taken with refresh(). Each new snapshot gets a new, higher version number. Individuals
+ * created afterwards use the new snapshot; existing individuals keep the snapshot
+ * they were created with (as they kept their own copies before). Parameters set
+ * on a single individual with setParameters() apply to that individual only.
+ *
+ * Sharing a snapshot means sharing its IBM function instances, which the
+ * individuals call during step(). The functions in this package keep no per-call
+ * state (EggDevelopmentFunction.calculate(), for example, only reads its
+ * parameters and takes its random numbers from the caller's CounterRandom or
+ * the StageRandom stream set for its thread), but the framework's IBM functions have
+ * not been checked, so shared snapshots must only be stepped on one thread.
+ * Sharing can be turned off with setShared(false) (ParallelStepper does this
+ * when it uses more than one thread): get() then returns a new copy from
+ * LHS_Factory for each individual, and the stages' clone() gives each copy
+ * its own parameters (and IBM functions), as before snapshots were used, so
+ * no function instance is called from two threads at once.
+ *
+ * All methods are thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class ParameterSnapshots {
+
+    /** the current snapshot for each type name */
+    private static final ConcurrentMap<String,Snapshot> snapshots = new ConcurrentHashMap<>();
+    /** flag to share snapshots among individuals */
+    private static volatile boolean shared = true;
+    /** last version number assigned (versions increase over all types, and are not reused after clear()) */
+    private static long lastVersion = 0;
+
+    private ParameterSnapshots(){}
+
+    /**
+     * Sets the flag to share parameters snapshots (and their IBM functions) 
+     * among individuals. Set it to false before any individuals are created 
+     * if they will be stepped on more than one thread.
+     *
+     * @param b - true to share snapshots (the default)
+     */
+    public static void setShared(boolean b){
+        shared = b;
+    }
+
+    /**
+     * Gets the flag to share parameters snapshots among individuals.
+     *
+     * @return - true if snapshots are shared
+     */
+    public static boolean isShared(){
+        return shared;
+    }
+
+    /**
+     * Gets the current parameters snapshot for a type name, creating it
+     * from LHS_Factory if necessary. If sharing is off, a new parameters 
+     * object is created from LHS_Factory instead.
+     *
+     * @param typeName - the life stage type name
+     * @return - the shared parameters object (do not edit it)
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static LifeStageParametersInterface get(String typeName)
+                    throws InstantiationException, IllegalAccessException {
+        if (!shared) return LHS_Factory.createParameters(typeName);
+        Snapshot s = snapshots.get(typeName);
+        if (s==null) s = create(typeName);
+        return s.params;
+    }
+
+    private static synchronized Snapshot create(String typeName)
+                    throws InstantiationException, IllegalAccessException {
+        Snapshot s = snapshots.get(typeName);
+        if (s==null){
+            s = new Snapshot(LHS_Factory.createParameters(typeName),++lastVersion);
+            snapshots.put(typeName,s);
+        }
+        return s;
+    }
+
+    /**
+     * Gets the version number of the current snapshot for a type name.
+     *
+     * @param typeName - the life stage type name
+     * @return - the version (0 if no snapshot has been taken)
+     */
+    public static long getVersion(String typeName){
+        Snapshot s = snapshots.get(typeName);
+        return (s==null) ? 0 : s.version;
+    }
+
+    /**
+     * Replaces the snapshot for a type name with an edited parameters object.
+     * The object must not be edited after it is published.
+     *
+     * @param typeName - the life stage type name
+     * @param params   - the new parameters
+     * @return - the new version number
+     */
+    public static synchronized long publish(String typeName, LifeStageParametersInterface params){
+        Snapshot s = new Snapshot(params,++lastVersion);
+        snapshots.put(typeName,s);
+        return s.version;
+    }
+
+    /**
+     * Replaces the snapshot for a type name with a new one from LHS_Factory
+     * (e.g., after the parameters for the type have been edited).
+     *
+     * @param typeName - the life stage type name
+     * @return - the new version number
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static long refresh(String typeName)
+                    throws InstantiationException, IllegalAccessException {
+        return publish(typeName,LHS_Factory.createParameters(typeName));
+    }
+
+    /**
+     * Notes that a parameters object has been edited (called by the parameters
+     * classes from setValue(), selectIBMFunctionForCategory() and 
+     * setFunctionParameter()). If the object is not the
+     * current snapshot for its type, the snapshot is discarded so the next get()
+     * takes a new one from LHS_Factory. Edits to the snapshot itself (which
+     * should not happen) are ignored.
+     *
+     * @param params - the edited parameters
+     */
+    public static void edited(LifeStageParametersInterface params){
+        if (snapshots.isEmpty()) return;
+        String typeName = params.getTypeName();
+        if (typeName==null) return;
+        Snapshot s = snapshots.get(typeName);
+        if ((s!=null)&&(s.params!=params)) snapshots.remove(typeName,s);
+    }
+
+    /**
+     * Discards all snapshots, so new ones are taken from LHS_Factory
+     * when next needed (e.g., at the start of a new model run).
+     */
+    public static synchronized void clear(){
+        snapshots.clear();
+    }
+
+    /**
+     * Immutable (parameters, version) pair.
+     */
+    private static final class Snapshot {
+        final LifeStageParametersInterface params;
+        final long version;
+        Snapshot(LifeStageParametersInterface params, long version){
+            this.params  = params;
+            this.version = version;
+        }
+    }
+}
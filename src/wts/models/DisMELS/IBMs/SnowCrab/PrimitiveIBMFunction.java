@@ -0,0 +1,30 @@
+/*
+ * PrimitiveIBMFunction.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+/**
+ * Interface for IBM functions that can be evaluated without boxing the result.
+ * 
+ * Functions implementing this interface are evaluated by FunctionArgs.calculate()
+ * through calculateDouble(), which takes the same input variables as calculate(Object)
+ * but returns the function value as a primitive double. The vars array may be
+ * a reusable buffer (see FunctionArgs), so implementations must not keep a
+ * reference to it.
+ *
+ * @author William Stockhausen
+ */
+public interface PrimitiveIBMFunction {
+
+    /**
+     * Calculates the value of the function.
+     *
+     * @param vars - the input variables (as for calculate(Object))
+     * @return - the function value
+     */
+    public double calculateDouble(double[] vars);
+}
@@ -0,0 +1,39 @@
+/*
+ * ReportWriterInterface.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.io.IOException;
+import wts.models.DisMELS.framework.LifeStageAttributesInterface;
+
+/**
+ * Interface for life stages that can write their CSV-formatted report directly 
+ * to an Appendable (e.g., a reusable StringBuilder or a buffered Writer), rather
+ * than building and returning it as a String via getReport().
+ * 
+ * @author William Stockhausen
+ */
+public interface ReportWriterInterface {
+    
+    /**
+     * Writes the report for the instance (the same text returned by getReport())
+     * to the Appendable.
+     * 
+     * @param out - the Appendable to write to
+     * @throws IOException 
+     */
+    public void writeReport(Appendable out) throws IOException;
+    
+    /**
+     * Gets the attributes for the instance with all values brought up to date
+     * as for writeReport(), including the track (which is otherwise only 
+     * updated when a report is written).
+     * 
+     * @return - the attributes 
+     */
+    public LifeStageAttributesInterface getReportAttributes();
+}
@@ -0,0 +1,47 @@
+/*
+ * RunOptions.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+/**
+ * Class-level options for a model run that apply across the snow crab life
+ * stages, whatever class they extend.
+ *
+ * @author William Stockhausen
+ */
+public final class RunOptions {
+
+    /** flag to skip advection for individuals that are attached to the bottom and do not move themselves */
+    private static volatile boolean skipAdvectionWhenAttached = false;
+
+    private RunOptions(){}
+
+    /**
+     * Sets the flag to skip the predictor/corrector (advection) steps for
+     * individuals of the benthic stages (MaleAdolescent, MaleAdult, FemalePrimiparous,
+     * FemaleMultiparous) that are attached to the bottom with a horizontal random
+     * walk parameter of 0. The particle tracker adds the currents in those steps,
+     * so this also stops such individuals from drifting with the bottom currents;
+     * only set it if the bottom currents are zero or are to be ignored.
+     * The default is false (always advect).
+     *
+     * @param b - true to skip advection
+     */
+    public static void setSkipAdvectionWhenAttached(boolean b){
+        skipAdvectionWhenAttached = b;
+    }
+
+    /**
+     * Gets the flag to skip the predictor/corrector (advection) steps for
+     * attached, non-moving individuals of the benthic stages.
+     *
+     * @return - true if advection is skipped
+     */
+    public static boolean getSkipAdvectionWhenAttached(){
+        return skipAdvectionWhenAttached;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * SolarGeometry.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.Arrays;
+import wts.models.utilities.DateTimeFunctions;
+
+/**
+ * Solar geometry shared by all individuals during a time step.
+ *
+ * The light level used by DielVerticalMigration_FixedDepthRanges (90.833 deg
+ * minus the solar zenith angle; >= 0 indicates daytime) depends only on
+ * position and time, so rather than calling DateTimeFunctions.computeSunriseSunset
+ * for every individual every step it is computed once per time step at the nodes
+ * of a coarse lon/lat lattice and bilinearly interpolated from the four nodes
+ * surrounding each individual. Nodes are computed the first time they are needed
+ * in a time step (so only the part of the lattice covering the occupied grid is
+ * ever computed) and discarded when the day-of-year (i.e., the model time) changes.
+ *
+ * The zenith angle is smooth except at the subsolar point, so the interpolation
+ * error is very small (at high latitudes, a few 1e-5 deg for the default 0.1 deg
+ * resolution and a few 1e-3 deg for 1 deg).
+ * The lattice resolution can be set with setResolution(); a resolution <= 0
+ * computes the light level exactly for each call. If error checking is turned on
+ * with setCheckErrors(true), each lookup is also computed exactly and the maximum
+ * error, and the number of lookups for which the day/night flag differs, are
+ * kept for getErrorReport() (error checking takes a lock, so it is for testing only).
+ *
+ * Each thread has its own lattice, so lookups take no locks when individuals
+ * are stepped in parallel (at the cost of each thread computing the nodes it
+ * needs once per time step). The node values do not depend on the thread.
+ *
+ * All methods are thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class SolarGeometry {
+
+    /** zenith angle (deg) at sunrise/sunset, including refraction */
+    public static final double ZENITH_SUNRISE = 90.833;
+
+    /** lattice resolution (deg) */
+    private static volatile double resolution = 0.1;
+    /** flag to check lookups against exact values */
+    private static volatile boolean checkErrors = false;
+
+    /** generation of the lattices (incremented to empty all of them) */
+    private static volatile int generation = 0;
+
+    /** the lattice for each thread */
+    private static final ThreadLocal<SolarGeometry> lattices = new ThreadLocal<SolarGeometry>(){
+        @Override
+        protected SolarGeometry initialValue(){
+            return new SolarGeometry();
+        }
+    };
+
+    /** key marking an empty slot */
+    private static final long EMPTY = GridCellID.NONE;
+
+    /* day-of-year for the lattice values */
+    private double yearDay = Double.NaN;
+    /* resolution for the lattice values */
+    private double res = Double.NaN;
+    /* generation of the lattice values */
+    private int gen = -1;
+    /* lattice node keys (packed (lon index,lat index)) */
+    private long[] keys;
+    /* light levels at the nodes */
+    private double[] vals;
+    /* number of computed nodes */
+    private int size = 0;
+
+    /* error statistics (guarded by the class lock) */
+    private static long   nChecked = 0;
+    private static long   nMismatched = 0;
+    private static double maxError = 0.0;
+    private static double maxErrorLon = Double.NaN;
+    private static double maxErrorLat = Double.NaN;
+
+    private SolarGeometry(){
+        keys = new long[256];
+        Arrays.fill(keys,EMPTY);
+        vals = new double[keys.length];
+    }
+
+    /**
+     * Sets the resolution of the lattice.
+     *
+     * @param deg - the resolution (deg); <= 0 to compute light levels exactly
+     */
+    public static void setResolution(double deg){
+        resolution = deg;
+    }
+
+    /**
+     * Gets the resolution of the lattice.
+     *
+     * @return - the resolution (deg); <= 0 if light levels are computed exactly
+     */
+    public static double getResolution(){
+        return resolution;
+    }
+
+    /**
+     * Sets the flag to check lookups against exact values (see getErrorReport()).
+     *
+     * @param b - true to check lookups
+     */
+    public static void setCheckErrors(boolean b){
+        checkErrors = b;
+    }
+
+    /**
+     * Gets the flag to check lookups against exact values.
+     *
+     * @return - true if lookups are checked
+     */
+    public static boolean getCheckErrors(){
+        return checkErrors;
+    }
+
+    /**
+     * Gets the light level at a position as 90.833 deg minus the solar zenith
+     * angle. Values >= 0 indicate daytime, otherwise night.
+     *
+     * @param lon     - longitude (deg)
+     * @param lat     - latitude (deg)
+     * @param yearDay - day-of-year (fractional part indicates time-of-day)
+     * @return - the light level (deg)
+     */
+    public static double getLightLevel(double lon, double lat, double yearDay){
+        double r = resolution;
+        if (r<=0) return computeLightLevel(lon,lat,yearDay);
+        double ll = lattices.get().interpolate(lon,lat,yearDay,r);
+        if (checkErrors) check(lon,lat,ll,computeLightLevel(lon,lat,yearDay));
+        return ll;
+    }
+
+    /**
+     * Gets the day/night flag at a position.
+     *
+     * @param lon     - longitude (deg)
+     * @param lat     - latitude (deg)
+     * @param yearDay - day-of-year (fractional part indicates time-of-day)
+     * @return - true if it is daytime
+     */
+    public static boolean isDaytime(double lon, double lat, double yearDay){
+        return getLightLevel(lon,lat,yearDay)>=0;
+    }
+
+    /**
+     * Gets the maximum absolute error (deg) in the light level found
+     * since the error statistics were last reset.
+     *
+     * @return - the maximum error
+     */
+    public static synchronized double getMaxError(){
+        return maxError;
+    }
+
+    /**
+     * Gets a summary of the errors found by checking lookups against exact values
+     * since the error statistics were last reset.
+     *
+     * @return - the summary
+     */
+    public static synchronized String getErrorReport(){
+        if (nChecked==0) return "SolarGeometry: no lookups checked (resolution = "+resolution+" deg).";
+        return "SolarGeometry: resolution = "+resolution+" deg; "+nChecked+" lookups checked; "+
+               "max error in light level = "+maxError+" deg at ("+maxErrorLon+","+maxErrorLat+"); "+
+               nMismatched+" lookups with the wrong day/night flag.";
+    }
+
+    /**
+     * Resets the error statistics.
+     */
+    public static synchronized void resetErrorStats(){
+        nChecked = 0;
+        nMismatched = 0;
+        maxError = 0.0;
+        maxErrorLon = Double.NaN;
+        maxErrorLat = Double.NaN;
+    }
+
+    /**
+     * Empties the lattice (for all threads).
+     */
+    public static synchronized void clear(){
+        generation++;
+    }
+
+    /**
+     * Computes the light level exactly.
+     */
+    private static double computeLightLevel(double lon, double lat, double yearDay){
+        return ZENITH_SUNRISE-DateTimeFunctions.computeSunriseSunset(lon,lat,yearDay)[4];
+    }
+
+    private double interpolate(double lon, double lat, double yd, double r){
+        double x = lon/r;
+        double y = lat/r;
+        long i0 = (long) Math.floor(x);
+        long j0 = (long) Math.floor(y);
+        double fi = x-i0;
+        double fj = y-j0;
+        int g = generation;
+        if ((yd!=yearDay)||(r!=res)||(g!=gen)) reset(yd,r,g);
+        double v = 0.0;
+        //skip nodes with zero weight (e.g., positions exactly on a lattice line)
+        if (fi<1.0&&fj<1.0) v += (1-fi)*(1-fj)*getNode(i0,  j0  );
+        if (fi>0.0&&fj<1.0) v += fi*(1-fj)    *getNode(i0+1,j0  );
+        if (fi<1.0&&fj>0.0) v += (1-fi)*fj    *getNode(i0,  j0+1);
+        if (fi>0.0&&fj>0.0) v += fi*fj        *getNode(i0+1,j0+1);
+        return v;
+    }
+
+    /**
+     * Gets the light level at a lattice node, computing it if necessary.
+     */
+    private double getNode(long i, long j){
+        long key = GridCellID.pack(i,j);
+        int slot = find(key);
+        if (keys[slot]==key) return vals[slot];
+        double v = computeLightLevel(i*res,j*res,yearDay);
+        put(key,v);
+        return v;
+    }
+
+    private static synchronized void check(double lon, double lat, double ll, double exact){
+        nChecked++;
+        if ((ll>=0)!=(exact>=0)) nMismatched++;
+        double err = Math.abs(ll-exact);
+        if (err>maxError){
+            maxError = err;
+            maxErrorLon = lon;
+            maxErrorLat = lat;
+        }
+    }
+
+    private void reset(double yd, double r, int g){
+        yearDay = yd;
+        res = r;
+        gen = g;
+        if (size>0) Arrays.fill(keys,EMPTY);
+        size = 0;
+    }
+
+    private int find(long key){
+        int mask = keys.length-1;
+        long h = key^(key>>>33);
+        h *= 0xff51afd7ed558ccdL;
+        int slot = (int)((h^(h>>>33))&mask);
+        while ((keys[slot]!=EMPTY)&&(keys[slot]!=key)) slot = (slot+1)&mask;
+        return slot;
+    }
+
+    private void put(long key, double v){
+        int slot = find(key);
+        if (keys[slot]!=key){
+            if (2*(size+1)>keys.length) {
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        vals[slot] = v;
+    }
+
+    private void grow(){
+        long[]   oldKeys = keys;
+        double[] oldVals = vals;
+        keys = new long[2*oldKeys.length];
+        Arrays.fill(keys,EMPTY);
+        vals = new double[keys.length];
+        for (int k=0;k<oldKeys.length;k++){
+            if (oldKeys[k]!=EMPTY){
+                int slot = find(oldKeys[k]);
+                keys[slot] = oldKeys[k];
+                vals[slot] = oldVals[k];
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * StageRandom.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import com.wtstockhausen.utils.RandomNumberGenerator;
+
+/**
+ * Random variates for the life stages, drawn from a thread-confined stream
+ * when one is set for the current thread.
+ * 
+ * The stages share a single RandomNumberGenerator, which is not safe to use
+ * from several threads at once. When the population is stepped in parallel
+ * (see ParallelStepper), each worker thread sets its own Stream with setStream()
+ * before stepping its individuals, and the stages draw from that stream instead.
+ * With no stream set (the usual, serial case), variates come from the shared
+ * generator exactly as before.
+ *
+ * The stages draw through their CounterRandom, which comes here only if
+ * counter-based draws have been turned off (CounterRandom.setEnabled(false)).
+ *
+ * @author William Stockhausen
+ */
+public final class StageRandom {
+
+    /** the stream for the current thread (null to use the shared generator) */
+    private static final ThreadLocal<Stream> current = new ThreadLocal<>();
+
+    private StageRandom(){}
+
+    /**
+     * Sets the stream used by the current thread.
+     *
+     * @param stream - the stream (null to use the shared generator)
+     */
+    public static void setStream(Stream stream){
+        if (stream==null) current.remove(); else current.set(stream);
+    }
+
+    /**
+     * Gets the stream used by the current thread.
+     *
+     * @return - the stream, or null if the shared generator is used
+     */
+    public static Stream getStream(){
+        return current.get();
+    }
+
+    /**
+     * Draws a standard normal variate.
+     *
+     * @param rng - the shared generator, used if no stream is set for the current thread
+     * @return - the variate
+     */
+    public static double computeNormalVariate(RandomNumberGenerator rng){
+        Stream s = current.get();
+        return (s==null) ? rng.computeNormalVariate() : s.nextNormal();
+    }
+
+    /**
+     * Draws a uniform variate on [a,b).
+     *
+     * @param rng - the shared generator, used if no stream is set for the current thread
+     * @param a   - lower bound
+     * @param b   - upper bound
+     * @return - the variate
+     */
+    public static double computeUniformVariate(RandomNumberGenerator rng, double a, double b){
+        Stream s = current.get();
+        return (s==null) ? rng.computeUniformVariate(a,b) : a+(b-a)*s.nextUniform();
+    }
+
+    /**
+     * A stream of random numbers (SplitMix64 generator; normal variates by
+     * the polar method). Instances are not thread-safe.
+     */
+    public static final class Stream {
+        private static final long GAMMA = 0x9e3779b97f4a7c15L;
+        private static final double TO_DOUBLE = 1.0/(1L<<53);
+
+        private long state;
+        private boolean haveSpare = false;
+        private double spare;
+
+        /**
+         * Creates a stream.
+         *
+         * @param seed - the seed
+         */
+        public Stream(long seed){
+            state = seed;
+        }
+
+        /**
+         * Creates a stream for a sub-task of a run (e.g., one chunk of the
+         * population in one time step), so that its numbers do not depend on
+         * which thread runs the sub-task.
+         *
+         * @param seed - seed for the run
+         * @param step - time step index
+         * @param task - sub-task index
+         * @return - the stream
+         */
+        public static Stream forTask(long seed, long step, long task){
+            return new Stream(mix(mix(seed^mix(step))+task));
+        }
+
+        /**
+         * Gets the next 64 random bits.
+         *
+         * @return - the bits
+         */
+        public long nextLong(){
+            state += GAMMA;
+            return mix(state);
+        }
+
+        /**
+         * Gets a uniform variate on [0,1).
+         *
+         * @return - the variate
+         */
+        public double nextUniform(){
+            return (nextLong()>>>11)*TO_DOUBLE;
+        }
+
+        /**
+         * Gets a standard normal variate.
+         *
+         * @return - the variate
+         */
+        public double nextNormal(){
+            if (haveSpare) {
+                haveSpare = false;
+                return spare;
+            }
+            double u, v, s;
+            do {
+                u = 2*nextUniform()-1;
+                v = 2*nextUniform()-1;
+                s = u*u+v*v;
+            } while ((s>=1)||(s==0));
+            double f = Math.sqrt(-2*Math.log(s)/s);
+            spare = v*f;
+            haveSpare = true;
+            return u*f;
+        }
+
+        private static long mix(long z){
+            z = (z^(z>>>30))*0xbf58476d1ce4e5b9L;
+            z = (z^(z>>>27))*0x94d049bb133111ebL;
+            return z^(z>>>31);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * TrackBuffer.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of (x,y,z) track coordinates packed into a single primitive
+ * array, used in place of an ArrayList of Coordinate objects.
+ *
+ * Points are stored as consecutive x,y,z triplets in a double[] or, if float
+ * precision is selected when the buffer is created, in a float[] (half the memory,
+ * ~7 significant digits: about 1 m in lon/lat and better than 0.1 m in projected
+ * coordinates). Coordinates are only created on demand, by getCoordinate(int),
+ * getLast() and toCoordinates().
+ *
+ * @author William Stockhausen
+ */
+public class TrackBuffer {
+
+    /** default initial capacity (number of points) */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /** flag to use float precision for new buffers */
+    private static boolean floatPrecision = false;
+
+    /**
+     * Sets the flag to store the coordinates of new buffers with float (true)
+     * or double (false) precision.
+     *
+     * @param b - true to use float precision
+     */
+    public static void setFloatPrecision(boolean b){
+        floatPrecision = b;
+    }
+
+    /**
+     * Gets the flag to store the coordinates of new buffers with float (true)
+     * or double (false) precision.
+     *
+     * @return - true if float precision is used
+     */
+    public static boolean getFloatPrecision(){
+        return floatPrecision;
+    }
+
+    /** packed coordinates, if double precision */
+    private double[] dv = null;
+    /** packed coordinates, if float precision */
+    private float[] fv = null;
+    /** number of points in the buffer */
+    private int n = 0;
+
+    /**
+     * Creates an empty buffer using the class-level precision flag.
+     */
+    public TrackBuffer(){
+        this(floatPrecision,DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param useFloats - true to store coordinates with float precision
+     * @param capacity  - initial capacity (number of points)
+     */
+    public TrackBuffer(boolean useFloats, int capacity){
+        capacity = Math.max(1,capacity);
+        if (useFloats) fv = new float[3*capacity]; else dv = new double[3*capacity];
+    }
+
+    /**
+     * Creates a buffer that is a copy of another, trimmed to size.
+     */
+    private TrackBuffer(TrackBuffer src){
+        int len = 3*Math.max(1,src.n);
+        if (src.fv!=null) fv = Arrays.copyOf(src.fv,len); else dv = Arrays.copyOf(src.dv,len);
+        n = src.n;
+    }
+
+    /**
+     * Returns an independent copy of the buffer.
+     *
+     * @return - the copy
+     */
+    public TrackBuffer copy(){
+        return new TrackBuffer(this);
+    }
+
+    /**
+     * Gets the number of points in the buffer.
+     *
+     * @return - the number of points
+     */
+    public int size(){
+        return n;
+    }
+
+    /**
+     * Tests whether the buffer is empty.
+     *
+     * @return - true if the buffer contains no points
+     */
+    public boolean isEmpty(){
+        return n==0;
+    }
+
+    /**
+     * Removes all points from the buffer (the storage is retained).
+     */
+    public void clear(){
+        n = 0;
+    }
+
+    /**
+     * Appends a point to the buffer.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void add(double x, double y, double z){
+        ensureCapacity(n+1);
+        set(n++,x,y,z);
+    }
+
+    /**
+     * Appends a Coordinate to the buffer.
+     *
+     * @param c - the Coordinate to append
+     */
+    public void add(Coordinate c){
+        add(c.x,c.y,c.z);
+    }
+
+    /**
+     * Sets the i-th point in the buffer. The point must already exist
+     * or be the next one to be added.
+     *
+     * @param i - index of the point
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void set(int i, double x, double y, double z){
+        int k = 3*i;
+        if (fv!=null){
+            fv[k] = (float) x; fv[k+1] = (float) y; fv[k+2] = (float) z;
+        } else {
+            dv[k] = x; dv[k+1] = y; dv[k+2] = z;
+        }
+    }
+
+    /**
+     * Removes the last point from the buffer.
+     */
+    public void removeLast(){
+        if (n>0) n--;
+    }
+
+    /**
+     * Gets the x value of the i-th point.
+     *
+     * @param i - index of the point
+     * @return - the x value
+     */
+    public double getX(int i){
+        return (fv!=null) ? fv[3*i] : dv[3*i];
+    }
+
+    /**
+     * Gets the y value of the i-th point.
+     *
+     * @param i - index of the point
+     * @return - the y value
+     */
+    public double getY(int i){
+        return (fv!=null) ? fv[3*i+1] : dv[3*i+1];
+    }
+
+    /**
+     * Gets the z value of the i-th point.
+     *
+     * @param i - index of the point
+     * @return - the z value
+     */
+    public double getZ(int i){
+        return (fv!=null) ? fv[3*i+2] : dv[3*i+2];
+    }
+
+    /**
+     * Creates a Coordinate for the i-th point.
+     *
+     * @param i - index of the point
+     * @return - new Coordinate
+     * @throws IndexOutOfBoundsException if i is not a valid index
+     */
+    public Coordinate getCoordinate(int i){
+        if ((i<0)||(i>=n)) throw new IndexOutOfBoundsException("Index: "+i+", Size: "+n);
+        return new Coordinate(getX(i),getY(i),getZ(i));
+    }
+
+    /**
+     * Creates a Coordinate for the last point.
+     *
+     * @return - new Coordinate
+     * @throws IndexOutOfBoundsException if the buffer is empty
+     */
+    public Coordinate getLast(){
+        return getCoordinate(n-1);
+    }
+
+    /**
+     * Creates an array of Coordinates for the points in the buffer.
+     * As with ArrayList.toArray(new Coordinate[1]), an empty buffer
+     * yields an array with a single null element.
+     *
+     * @return - new Coordinate[]
+     */
+    public Coordinate[] toCoordinates(){
+        Coordinate[] cv = new Coordinate[Math.max(1,n)];
+        for (int i=0;i<n;i++) cv[i] = new Coordinate(getX(i),getY(i),getZ(i));
+        return cv;
+    }
+
+    private void ensureCapacity(int nPts){
+        int cap = (fv!=null) ? fv.length/3 : dv.length/3;
+        if (nPts<=cap) return;
+        int newCap = Math.max(nPts,cap+(cap>>1)+1);
+        if (fv!=null) fv = Arrays.copyOf(fv,3*newCap); else dv = Arrays.copyOf(dv,3*newCap);
+    }
+}
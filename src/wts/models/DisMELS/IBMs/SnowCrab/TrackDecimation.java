@@ -0,0 +1,271 @@
+/*
+ * TrackDecimation.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Policy for decimating a full track as it is built (see LHSTrack.update).
+ *
+ * The last point in a track is always the current position. When a new position
+ * is added, the policy decides whether the previous position is retained in the
+ * track (the new one is appended) or dropped (the new one replaces it). The
+ * available policies are:
+ * <ul>
+ *   <li>everyNth(n) - retain every n-th position;</li>
+ *   <li>minDistance(d) - retain a position only if it is at least d metres
+ *   from the previously retained one;</li>
+ *   <li>douglasPeucker(tol) - streaming (opening-window) form of the
+ *   Douglas-Peucker simplification: a position is dropped as long as it and
+ *   all the positions dropped since the last retained one lie within tol metres
+ *   of the segment from the last retained position to the new one.</li>
+ * </ul>
+ * Distances are horizontal, in metres, computed from lon/lat with a local
+ * equirectangular approximation (accurate to well under 1% over the distances
+ * involved) so the projected track does not have to be computed every step.
+ *
+ * Policy objects are immutable and may be shared; the per-track state is
+ * held in a State created for each track. The policy used for the full tracks
+ * of a life stage class is set with setForClass() (no policy, i.e. every
+ * position retained, by default).
+ *
+ * @author William Stockhausen
+ */
+public abstract class TrackDecimation {
+
+    /** mean earth radius (m) */
+    private static final double R_EARTH = 6371000.0;
+    /** degrees to radians */
+    private static final double D2R = Math.PI/180.0;
+    /** maximum number of dropped positions tested by douglasPeucker */
+    public static final int MAX_WINDOW = 256;
+
+    /** policies set for life stage classes */
+    private static final ConcurrentMap<Class<?>,TrackDecimation> policies = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the policy used to decimate full tracks (i.e., when the write
+     * tracks flag is set) for all instances of a life stage class.
+     *
+     * @param lhsClass - the life stage class
+     * @param policy   - the policy (null to retain every position)
+     */
+    public static void setForClass(Class<?> lhsClass, TrackDecimation policy){
+        if (policy==null) {
+            policies.remove(lhsClass);
+        } else {
+            policies.put(lhsClass,policy);
+        }
+    }
+
+    /**
+     * Gets the policy used to decimate full tracks for all instances of
+     * a life stage class.
+     *
+     * @param lhsClass - the life stage class
+     * @return - the policy (null if every position is retained)
+     */
+    public static TrackDecimation getForClass(Class<?> lhsClass){
+        return policies.get(lhsClass);
+    }
+
+    /**
+     * Creates a policy that retains every n-th position.
+     *
+     * @param n - the decimation interval (1 retains every position)
+     * @return - the policy
+     */
+    public static TrackDecimation everyNth(final int n){
+        if (n<1) throw new IllegalArgumentException("Decimation interval must be >= 1: "+n);
+        return new TrackDecimation(){
+            @Override
+            public State createState(){
+                return new State(){
+                    private int nDropped = 0;
+                    @Override
+                    public boolean retainLast(TrackBuffer trk, double lon, double lat){
+                        if (nDropped+1>=n) {nDropped = 0; return true;}
+                        nDropped++;
+                        return false;
+                    }
+                    @Override
+                    public void reset(){nDropped = 0;}
+                };
+            }
+            @Override
+            public String toString(){return "everyNth("+n+")";}
+        };
+    }
+
+    /**
+     * Creates a policy that retains a position only if it is at least
+     * the given distance from the previously retained position.
+     *
+     * @param minDist - the minimum distance (m)
+     * @return - the policy
+     */
+    public static TrackDecimation minDistance(final double minDist){
+        return new TrackDecimation(){
+            @Override
+            public State createState(){
+                return new State(){
+                    @Override
+                    public boolean retainLast(TrackBuffer trk, double lon, double lat){
+                        int n = trk.size();
+                        return distance(trk.getX(n-2),trk.getY(n-2),trk.getX(n-1),trk.getY(n-1))>=minDist;
+                    }
+                    @Override
+                    public void reset(){}
+                };
+            }
+            @Override
+            public String toString(){return "minDistance("+minDist+")";}
+        };
+    }
+
+    /**
+     * Creates a policy that simplifies the track with a streaming form
+     * of the Douglas-Peucker algorithm.
+     *
+     * @param tol - the error tolerance (m)
+     * @return - the policy
+     */
+    public static TrackDecimation douglasPeucker(final double tol){
+        return new TrackDecimation(){
+            @Override
+            public State createState(){
+                return new DouglasPeuckerState(tol);
+            }
+            @Override
+            public String toString(){return "douglasPeucker("+tol+")";}
+        };
+    }
+
+    /**
+     * Creates the per-track state for the policy.
+     *
+     * @return - new State
+     */
+    public abstract State createState();
+
+    /**
+     * Per-track decimation state.
+     */
+    public static abstract class State implements Cloneable {
+        /**
+         * Decides whether the current last position in the track is retained
+         * when the new position is added. Called only when the track has
+         * at least two positions.
+         *
+         * @param trk - the geographic track (lon, lat, z)
+         * @param lon - longitude of the new position
+         * @param lat - latitude of the new position
+         * @return - true to retain the last position
+         */
+        public abstract boolean retainLast(TrackBuffer trk, double lon, double lat);
+
+        /**
+         * Resets the state (when the track is cleared or restarted).
+         */
+        public abstract void reset();
+
+        /**
+         * Returns an independent copy of the state.
+         *
+         * @return - the copy
+         */
+        public State copy(){
+            try {
+                return (State) clone();
+            } catch (CloneNotSupportedException ex) {
+                ex.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Per-track state for the douglasPeucker policy.
+     */
+    private static class DouglasPeuckerState extends State {
+        /* the error tolerance (m) */
+        private final double tol;
+        /* positions dropped since the last retained one (lon,lat,0) */
+        private TrackBuffer window = new TrackBuffer(false,8);
+
+        DouglasPeuckerState(double tol){
+            this.tol = tol;
+        }
+
+        @Override
+        public boolean retainLast(TrackBuffer trk, double lon, double lat){
+            int n = trk.size();
+            double lon0 = trk.getX(n-2), lat0 = trk.getY(n-2);
+            double lonL = trk.getX(n-1), latL = trk.getY(n-1);
+            boolean retain = (window.size()>=MAX_WINDOW)||
+                             (offset(lon0,lat0,lon,lat,lonL,latL)>tol);
+            for (int i=0;(i<window.size())&&!retain;i++){
+                retain = offset(lon0,lat0,lon,lat,window.getX(i),window.getY(i))>tol;
+            }
+            if (retain) {
+                window.clear();
+            } else {
+                window.add(lonL,latL,0.0);
+            }
+            return retain;
+        }
+
+        @Override
+        public void reset(){
+            window.clear();
+        }
+
+        @Override
+        public State copy(){
+            DouglasPeuckerState cpy = (DouglasPeuckerState) super.copy();
+            cpy.window = window.copy();
+            return cpy;
+        }
+    }
+
+    /**
+     * Gets the difference in longitude (degrees) between two positions,
+     * in [-180,180].
+     */
+    private static double dLon(double lon1, double lon2){
+        double d = lon2-lon1;
+        if (d>180) d -= 360; else if (d<-180) d += 360;
+        return d;
+    }
+
+    /**
+     * Computes the horizontal distance (m) between two positions.
+     */
+    static double distance(double lon1, double lat1, double lon2, double lat2){
+        double kx = R_EARTH*D2R*Math.cos(0.5*(lat1+lat2)*D2R);
+        double dx = dLon(lon1,lon2)*kx;
+        double dy = (lat2-lat1)*R_EARTH*D2R;
+        return Math.sqrt(dx*dx+dy*dy);
+    }
+
+    /**
+     * Computes the horizontal distance (m) from a position to the segment
+     * between two others, in a local equirectangular frame centred on the first.
+     */
+    static double offset(double lon0, double lat0, double lon1, double lat1, double lon, double lat){
+        double kx = R_EARTH*D2R*Math.cos(lat0*D2R);
+        double ky = R_EARTH*D2R;
+        double x1 = dLon(lon0,lon1)*kx, y1 = (lat1-lat0)*ky;
+        double x  = dLon(lon0,lon)*kx,  y  = (lat -lat0)*ky;
+        double l2 = x1*x1+y1*y1;
+        double t  = (l2>0) ? Math.max(0.0,Math.min(1.0,(x*x1+y*y1)/l2)) : 0.0;
+        double dx = x-t*x1, dy = y-t*y1;
+        return Math.sqrt(dx*dx+dy*dy);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * TrackEncoder.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.io.IOException;
+
+/**
+ * Encodes tracks as strings for output.
+ *
+ * Two encodings are available:
+ * <ul>
+ *   <li>DECIMAL - the standard "x:y:z;" format, each value written with up to
+ *   5 decimal places and trailing zeros dropped (as with DecimalFormat("#.#####")).
+ *   Values are rounded half-up after scaling, so a value lying within a
+ *   rounding error of a tie may differ from DecimalFormat in the last digit.</li>
+ *   <li>POLYLINE - a compact encoding in the style of the encoded polyline
+ *   algorithm: the prefix "polyline:5:5:2;" followed by, for each point, the
+ *   differences from the previous point of x and y (scaled by 1e5) and z (scaled
+ *   by 1e2), each rounded to a long, zigzag-encoded and written as 5-bit chunks
+ *   in the characters '?' (63) to '~' (126). The characters ',', ':' and ';'
+ *   are never used inside the encoded points, so the result is safe in CSV output.
+ *   NaN values are written as 0, so this is intended for geographic tracks.</li>
+ * </ul>
+ * Encoders hold no state and may be shared among threads.
+ *
+ * @author William Stockhausen
+ */
+public abstract class TrackEncoder {
+
+    /** the standard x:y:z; encoding */
+    public static final TrackEncoder DECIMAL = new DecimalEncoder();
+    /** the compact polyline-style encoding */
+    public static final TrackEncoder POLYLINE = new PolylineEncoder();
+
+    /**
+     * Gets an encoder by name ("decimal" or "polyline", case-insensitive).
+     *
+     * @param name - the encoder name
+     * @return - the encoder
+     * @throws IllegalArgumentException if the name is not recognized
+     */
+    public static TrackEncoder getInstance(String name){
+        if ("decimal".equalsIgnoreCase(name))  return DECIMAL;
+        if ("polyline".equalsIgnoreCase(name)) return POLYLINE;
+        throw new IllegalArgumentException("Unknown track encoding: "+name);
+    }
+
+    /**
+     * Writes the encoded track to an Appendable.
+     *
+     * @param trk - the track
+     * @param out - the Appendable to write to
+     * @throws IOException
+     */
+    public abstract void encode(TrackBuffer trk, Appendable out) throws IOException;
+
+    /**
+     * Decodes an encoded track.
+     *
+     * @param str - the encoded track
+     * @return - the track
+     * @throws IllegalArgumentException if the string cannot be decoded
+     */
+    public abstract TrackBuffer decode(String str);
+
+    /**
+     * Encodes a track as a String.
+     *
+     * @param trk - the track
+     * @return - the encoded track
+     */
+    public String encode(TrackBuffer trk){
+        StringBuilder strb = new StringBuilder(16*trk.size()+16);
+        try {
+            encode(trk,strb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return strb.toString();
+    }
+
+    /**
+     * Encoder for the standard x:y:z; format.
+     */
+    private static class DecimalEncoder extends TrackEncoder {
+        /** number of decimal places */
+        private static final int    DIGITS = 5;
+        /** scale corresponding to DIGITS */
+        private static final double SCALE  = 1.0e5;
+        /** largest absolute value written by the fixed-point path */
+        private static final double MAX_FIXED = 1.0e13;
+
+        @Override
+        public void encode(TrackBuffer trk, Appendable out) throws IOException {
+            char[] buf = new char[24];
+            int n = trk.size();
+            for (int i=0;i<n;i++){
+                append(out,trk.getX(i),buf); out.append(':');
+                append(out,trk.getY(i),buf); out.append(':');
+                append(out,trk.getZ(i),buf); out.append(';');
+            }
+        }
+
+        /**
+         * Appends a value with up to DIGITS decimal places, dropping
+         * trailing zeros (and the decimal point for whole numbers).
+         */
+        private static void append(Appendable out, double v, char[] buf) throws IOException {
+            if (Double.isNaN(v)||Double.isInfinite(v)||(Math.abs(v)>=MAX_FIXED)) {
+                out.append(String.valueOf(v));
+                return;
+            }
+            boolean neg = (Double.doubleToRawLongBits(v)<0);
+            long s = Math.round(Math.abs(v)*SCALE);
+            long ip = s/100000;
+            int  fp = (int)(s%100000);
+            int k = buf.length;
+            if (fp>0){
+                int nd = DIGITS;
+                while (fp%10==0) {fp /= 10; nd--;}
+                for (int d=0;d<nd;d++) {buf[--k] = (char)('0'+fp%10); fp /= 10;}
+                buf[--k] = '.';
+            }
+            do {buf[--k] = (char)('0'+ip%10); ip /= 10;} while (ip>0);
+            if (neg) buf[--k] = '-';
+            for (;k<buf.length;k++) out.append(buf[k]);
+        }
+
+        @Override
+        public TrackBuffer decode(String str){
+            TrackBuffer trk = new TrackBuffer();
+            String[] pts = str.split(";");
+            for (String pt: pts){
+                if (pt.isEmpty()) continue;
+                String[] v = pt.split(":");
+                if (v.length!=3) throw new IllegalArgumentException("Bad track point: "+pt);
+                trk.add(Double.parseDouble(v[0]),Double.parseDouble(v[1]),Double.parseDouble(v[2]));
+            }
+            return trk;
+        }
+    }
+
+    /**
+     * Encoder for the compact polyline-style format.
+     */
+    private static class PolylineEncoder extends TrackEncoder {
+        /** prefix identifying the encoding and the decimal places for x, y, z */
+        private static final String PREFIX = "polyline:5:5:2;";
+        private static final double SCALE_XY = 1.0e5;
+        private static final double SCALE_Z  = 1.0e2;
+
+        @Override
+        public void encode(TrackBuffer trk, Appendable out) throws IOException {
+            out.append(PREFIX);
+            long px = 0, py = 0, pz = 0;
+            int n = trk.size();
+            for (int i=0;i<n;i++){
+                long x = scale(trk.getX(i),SCALE_XY);
+                long y = scale(trk.getY(i),SCALE_XY);
+                long z = scale(trk.getZ(i),SCALE_Z);
+                appendValue(out,x-px);
+                appendValue(out,y-py);
+                appendValue(out,z-pz);
+                px = x; py = y; pz = z;
+            }
+        }
+
+        private static long scale(double v, double scale){
+            return Double.isNaN(v) ? 0 : Math.round(v*scale);
+        }
+
+        /** appends a zigzag-encoded value as 5-bit chunks */
+        private static void appendValue(Appendable out, long v) throws IOException {
+            long u = (v<<1)^(v>>63);
+            while (u>=0x20){
+                out.append((char)((0x20|(u&0x1f))+63));
+                u >>>= 5;
+            }
+            out.append((char)(u+63));
+        }
+
+        @Override
+        public TrackBuffer decode(String str){
+            if (!str.startsWith(PREFIX))
+                throw new IllegalArgumentException("Not a polyline-encoded track.");
+            TrackBuffer trk = new TrackBuffer();
+            long[] v = new long[3];
+            int[] pos = new int[]{PREFIX.length()};
+            while (pos[0]<str.length()){
+                for (int d=0;d<3;d++) v[d] += readValue(str,pos);
+                trk.add(v[0]/SCALE_XY,v[1]/SCALE_XY,v[2]/SCALE_Z);
+            }
+            return trk;
+        }
+
+        /** reads a zigzag-encoded value starting at pos[0], advancing pos[0] */
+        private static long readValue(String str, int[] pos){
+            long u = 0;
+            int shift = 0;
+            int c;
+            do {
+                if (pos[0]>=str.length())
+                    throw new IllegalArgumentException("Truncated polyline-encoded track.");
+                c = str.charAt(pos[0]++)-63;
+                u |= ((long)(c&0x1f))<<shift;
+                shift += 5;
+            } while (c>=0x20);
+            return (u>>>1)^-(u&1);
+        }
+    }
+}
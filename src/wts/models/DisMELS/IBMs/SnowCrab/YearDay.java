@@ -0,0 +1,166 @@
+/*
+ * YearDay.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import wts.models.DisMELS.framework.GlobalInfo;
+import wts.models.DisMELS.framework.LifeStageInterface;
+import wts.models.utilities.CalendarIF;
+
+/**
+ * Conversion of model time to the model calendar's (fractional) day-of-year,
+ * without setting the calendar's time.
+ *
+ * The stages used to get the day-of-year for an individual's time by setting
+ * the shared calendar to that time, calling getYearDay() and setting it back,
+ * which serializes initialization and races with anything else using the
+ * calendar. Within a calendar year, though, the day-of-year is just the
+ * day-of-year at the start of the year plus the days elapsed since then, so
+ * here the start, length and first day number of each year are worked out once
+ * from the calendar and kept; conversions for times in a known year are then
+ * pure arithmetic on an immutable table, needing no locks.
+ *
+ * CalendarIF gives no way to get the year boundaries directly, so the first
+ * conversion for a time in a new year queries the calendar (three calls to
+ * setTimeOffset()/getYearDay(), while holding the calendar's lock, with the
+ * calendar's time restored afterwards). This happens once per year and calendar
+ * in a run. Days are taken to be 86400 s long.
+ *
+ * All methods are thread-safe.
+ *
+ * @author William Stockhausen
+ */
+public final class YearDay {
+
+    /** seconds per day */
+    private static final double DAY_SECS = LifeStageInterface.DAY_SECS;
+
+    /** the known years */
+    private static volatile Years years = new Years(null,new double[0],new double[0],new double[0]);
+
+    private YearDay(){}
+
+    /**
+     * Gets the day-of-year for a model time on the model calendar.
+     *
+     * @param time - model time (s)
+     * @return - the day-of-year (fractional part indicates time-of-day)
+     */
+    public static double getYearDay(double time){
+        return getYearDay(GlobalInfo.getInstance().getCalendar(),time);
+    }
+
+    /**
+     * Gets the day-of-year for a model time on a calendar.
+     *
+     * @param cal  - the calendar
+     * @param time - model time (s)
+     * @return - the day-of-year (fractional part indicates time-of-day)
+     */
+    public static double getYearDay(CalendarIF cal, double time){
+        Years y = years;
+        if (y.cal==cal){
+            int k = y.find(time);
+            if (k>=0) return y.yearDay(k,time);
+        }
+        return addYear(cal,time);
+    }
+
+    /**
+     * Forgets the known years (e.g., if the calendar's reference date changes).
+     */
+    public static synchronized void clear(){
+        years = new Years(null,new double[0],new double[0],new double[0]);
+    }
+
+    /**
+     * Works out the year containing a time from the calendar and adds it to
+     * the known years.
+     */
+    private static synchronized double addYear(CalendarIF cal, double time){
+        Years y = years;
+        if (y.cal!=cal) y = new Years(cal,new double[0],new double[0],new double[0]);
+        int k = y.find(time);
+        if (k<0){
+            double start, length, first;
+            synchronized (cal) {
+                long modTime = cal.getTimeOffset();
+                try {
+                    double t = Math.floor(time);
+                    double q = query(cal,t);
+                    //one day before the start of the year if the first day is 1, the start itself if it is 0
+                    double r = query(cal,t-q*DAY_SECS);
+                    if (r<1.0) {
+                        first = 0.0;
+                        start = Math.round(t-q*DAY_SECS);
+                    } else {
+                        first = 1.0;
+                        start = Math.round(t-(q-1.0)*DAY_SECS);
+                    }
+                    //365 days after the start is the start of the next year unless this is a leap year
+                    double s = query(cal,start+365*DAY_SECS);
+                    length = ((s<first+1.0) ? 365 : 366)*DAY_SECS;
+                } finally {
+                    cal.setTimeOffset(modTime);
+                }
+            }
+            y = y.with(start,start+length,first);
+            years = y;
+            k = y.find(time);
+            if (k<0) return first+(time-start)/DAY_SECS;//e.g., time is NaN
+        }
+        return y.yearDay(k,time);
+    }
+
+    private static double query(CalendarIF cal, double t){
+        cal.setTimeOffset((long) t);
+        return cal.getYearDay();
+    }
+
+    /**
+     * Immutable table of known years for a calendar.
+     */
+    private static final class Years {
+        final CalendarIF cal;
+        /* start time of each year (s) */
+        final double[] start;
+        /* end time of each year (s) */
+        final double[] end;
+        /* day-of-year at the start of each year */
+        final double[] first;
+
+        Years(CalendarIF cal, double[] start, double[] end, double[] first){
+            this.cal   = cal;
+            this.start = start;
+            this.end   = end;
+            this.first = first;
+        }
+
+        int find(double time){
+            for (int k=0;k<start.length;k++){
+                if ((start[k]<=time)&&(time<end[k])) return k;
+            }
+            return -1;
+        }
+
+        double yearDay(int k, double time){
+            return first[k]+(time-start[k])/DAY_SECS;
+        }
+
+        Years with(double s, double e, double f){
+            int n = start.length;
+            double[] ns = new double[n+1];
+            double[] ne = new double[n+1];
+            double[] nf = new double[n+1];
+            System.arraycopy(start,0,ns,0,n);
+            System.arraycopy(end,  0,ne,0,n);
+            System.arraycopy(first,0,nf,0,n);
+            ns[n] = s; ne[n] = e; nf[n] = f;
+            return new Years(cal,ns,ne,nf);
+        }
+    }
+}
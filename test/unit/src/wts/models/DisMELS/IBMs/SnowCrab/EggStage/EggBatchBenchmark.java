@@ -0,0 +1,115 @@
+/*
+ * EggBatchBenchmark.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab.EggStage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import wts.models.DisMELS.framework.LifeStageAttributesInterface;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Timing harness comparing the ways a spawning female can create a batch of
+ * n eggs (n = 10^3, 10^4, 10^5 by default):
+ * <ul>
+ *   <li>"per-egg": one constructor call per egg, followed by setting the spawning
+ *       attributes one at a time and the Lagrangian particle, as
+ *       FemaleMultiparous does for individuals created by LHS_Factory (without
+ *       the factory's own lookup cost);</li>
+ *   <li>"batch": a single createBatch(n) call.</li>
+ * </ul>
+ * Each case is run for a number of warm-up rounds, then timed for a number of
+ * measured rounds; the median time per batch and per egg is printed.
+ *
+ * Usage: java EggBatchBenchmark [typeName [warmup [rounds [n1 n2 ...]]]]
+ *
+ * The DisMELS framework must be on the class path.
+ *
+ * @author William Stockhausen
+ */
+public class EggBatchBenchmark {
+
+    /** keeps results reachable so the work is not optimized away */
+    private static long sink = 0;
+
+    public static void main(String[] args) throws Exception {
+        String typeName = (args.length>0) ? args[0] : "EggStage";
+        int warmup      = (args.length>1) ? Integer.parseInt(args[1]) : 5;
+        int rounds      = (args.length>2) ? Integer.parseInt(args[2]) : 11;
+        int[] ns = new int[]{1000,10000,100000};
+        if (args.length>3) {
+            ns = new int[args.length-3];
+            for (int i=3;i<args.length;i++) ns[i-3] = Integer.parseInt(args[i]);
+        }
+        EggStage proto = new EggStage(typeName);
+        proto.getAttributes().setValue(LifeStageAttributesInterface.PROP_attached,true);
+        proto.getAttributes().setValue(LifeStageAttributesInterface.PROP_number,1.0);
+        System.out.println("n,method,median ms/batch,ns/egg");
+        for (int n: ns) {
+            for (String method: new String[]{"per-egg","batch"}) {
+                for (int r=0;r<warmup;r++) run(method,proto,typeName,n);
+                double[] ms = new double[rounds];
+                for (int r=0;r<rounds;r++) ms[r] = run(method,proto,typeName,n);
+                Arrays.sort(ms);
+                double med = ms[rounds/2];
+                System.out.println(n+","+method+","+String.format("%.3f",med)+","+String.format("%.1f",1.0e6*med/n));
+            }
+        }
+        if (sink==42) System.out.println();
+    }
+
+    /**
+     * Creates a batch of n eggs by one method.
+     *
+     * @return - elapsed time (ms)
+     */
+    private static double run(String method, EggStage proto, String typeName, int n) throws Exception {
+        List<Object> batch = new ArrayList<>(n);
+        long t0 = System.nanoTime();
+        switch (method) {
+            case "per-egg":
+                for (int i=0;i<n;i++) batch.add(createPerEgg(proto,typeName));
+                break;
+            case "batch":
+                proto.createBatch(n,batch);
+                break;
+        }
+        long t1 = System.nanoTime();
+        sink += batch.size()+System.identityHashCode(batch.get(n-1));
+        return (t1-t0)/1.0e6;
+    }
+
+    /**
+     * Creates one egg the way spawning did before batches were used.
+     */
+    private static LifeStageInterface createPerEgg(EggStage proto, String typeName) throws Exception {
+        LifeStageAttributesInterface atts = proto.getAttributes();
+        EggStage egg = new EggStage(typeName);
+        LifeStageAttributesInterface newAtts = egg.getAttributes();
+        newAtts.setValue(LifeStageAttributesInterface.PROP_parentID,   atts.getValue(LifeStageAttributesInterface.PROP_id));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_origID,     atts.getValue(LifeStageAttributesInterface.PROP_id));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_startTime,  atts.getValue(LifeStageAttributesInterface.PROP_time));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_time,       atts.getValue(LifeStageAttributesInterface.PROP_time));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_horizType,  atts.getValue(LifeStageAttributesInterface.PROP_horizType));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_vertType,   atts.getValue(LifeStageAttributesInterface.PROP_vertType));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos1,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos1));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_horizPos2,  atts.getValue(LifeStageAttributesInterface.PROP_horizPos2));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_vertPos,    atts.getValue(LifeStageAttributesInterface.PROP_vertPos));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_gridCellID, atts.getValue(LifeStageAttributesInterface.PROP_gridCellID));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_track,      atts.getValue(LifeStageAttributesInterface.PROP_track));
+        newAtts.setValue(LifeStageAttributesInterface.PROP_active,     true);
+        newAtts.setValue(LifeStageAttributesInterface.PROP_alive,      true);
+        newAtts.setValue(LifeStageAttributesInterface.PROP_attached,   true);
+        newAtts.setValue(LifeStageAttributesInterface.PROP_age,        0.0);
+        newAtts.setValue(LifeStageAttributesInterface.PROP_ageInStage, 0.0);
+        newAtts.setValue(LifeStageAttributesInterface.PROP_number,     atts.getValue(LifeStageAttributesInterface.PROP_number));
+        egg.setLagrangianParticle(proto.getLagrangianParticle());
+        egg.setAttributes(newAtts);
+        return egg;
+    }
+}
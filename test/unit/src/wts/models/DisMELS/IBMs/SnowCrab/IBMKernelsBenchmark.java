@@ -0,0 +1,161 @@
+/*
+ * IBMKernelsBenchmark.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.util.Arrays;
+import wts.models.DisMELS.IBMFunctions.Growth.ExponentialGrowthFunction;
+import wts.models.DisMELS.IBMFunctions.Growth.LinearGrowthFunction;
+import wts.models.DisMELS.IBMFunctions.Growth.vonBertalanffyGrowthFunction;
+import wts.models.DisMELS.IBMFunctions.Miscellaneous.ConstantFunction;
+import wts.models.DisMELS.IBMFunctions.Miscellaneous.PowerLawFunction;
+import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
+import wts.models.DisMELS.IBMFunctions.Mortality.TemperatureDependentMortalityRate_Houde1989;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Timing harness comparing the ways a stage can evaluate its growth and
+ * mortality functions each time step:
+ * <ul>
+ *   <li>"chain": the instanceof chains the pelagic stages used (a new double[]
+ *       per growth call, boxed mortality arguments and results), or, for the
+ *       adolescent and adult stages ("size" cases), a generic call through
+ *       FunctionArgs.calculate() and calculate(Object);</li>
+ *   <li>"kernel": the kernel created once by IBMKernels for the function.</li>
+ * </ul>
+ * Each case evaluates growth and mortality for n individuals for a number of
+ * warm-up rounds, then for a number of measured rounds; the median time per
+ * round and per individual is printed.
+ *
+ * Usage: java IBMKernelsBenchmark [warmup [rounds [n]]]
+ *
+ * The DisMELS framework must be on the class path. The results depend on the
+ * cost of the functions themselves, which is the same for both methods.
+ *
+ * @author William Stockhausen
+ */
+public class IBMKernelsBenchmark {
+
+    /** time step (s) */
+    private static final double DT = 3600.0;
+
+    /** keeps results reachable so the work is not optimized away */
+    private static double sink = 0;
+
+    public static void main(String[] args) {
+        int warmup = (args.length>0) ? Integer.parseInt(args[0]) : 20;
+        int rounds = (args.length>1) ? Integer.parseInt(args[1]) : 21;
+        int n      = (args.length>2) ? Integer.parseInt(args[2]) : 100000;
+        double[] size = new double[n];
+        double[] temp = new double[n];
+        for (int i=0;i<n;i++) {
+            size[i] = 1.0+(i%100)/10.0;
+            temp[i] = -1.0+(i%50)/10.0;
+        }
+        System.out.println("case,method,median ms/round,ns/indiv");
+        run("exponential/Houde",new ExponentialGrowthFunction(),new TemperatureDependentMortalityRate_Houde1989(),false,warmup,rounds,size,temp);
+        run("linear/constant",  new LinearGrowthFunction(),     new ConstantMortalityRate(),                       false,warmup,rounds,size,temp);
+        run("size: vonB/power", new vonBertalanffyGrowthFunction(),new PowerLawFunction(),                      true, warmup,rounds,size,temp);
+        run("size: vonB/constant",new vonBertalanffyGrowthFunction(),new ConstantFunction(),                    true, warmup,rounds,size,temp);
+        if (sink==42) System.out.println();
+    }
+
+    private static void run(String name, IBMFunctionInterface fcnGrowth, IBMFunctionInterface fcnMort,
+                            boolean bySize, int warmup, int rounds, double[] size, double[] temp) {
+        IBMKernels.Growth kernGrowth = bySize ? IBMKernels.sizeGrowth(fcnGrowth)   : IBMKernels.growth(fcnGrowth);
+        IBMKernels.Rate   kernMort   = bySize ? IBMKernels.sizeMortality(fcnMort) : IBMKernels.mortality(fcnMort);
+        FunctionArgs fcnArgs = new FunctionArgs();
+        for (String method: new String[]{"chain","kernel"}) {
+            double[] ms = new double[rounds];
+            for (int r=-warmup;r<rounds;r++) {
+                long t0 = System.nanoTime();
+                double s;
+                if (method.equals("kernel")) {
+                    s = bySize ? runSizeKernels(kernGrowth,kernMort,size,fcnArgs) : runKernels(kernGrowth,kernMort,size,temp,fcnArgs);
+                } else if (bySize) {
+                    s = runGeneric(fcnGrowth,fcnMort,size,fcnArgs);
+                } else {
+                    s = runChains(fcnGrowth,fcnMort,size,temp);
+                }
+                long t1 = System.nanoTime();
+                sink += s;
+                if (r>=0) ms[r] = (t1-t0)/1.0e6;
+            }
+            Arrays.sort(ms);
+            double med = ms[rounds/2];
+            System.out.println(name+","+method+","+String.format("%.3f",med)+","+String.format("%.1f",1.0e6*med/size.length));
+        }
+    }
+
+    /*
+     * The kernels are called from separate methods for the pelagic and "size"
+     * cases, as they are from separate stage classes in the model, so each call
+     * site sees the kernel classes of its own cases only.
+     */
+    private static double runKernels(IBMKernels.Growth kernGrowth, IBMKernels.Rate kernMort,
+                                     double[] size, double[] temp, FunctionArgs fcnArgs) {
+        double s = 0;
+        for (int i=0;i<size.length;i++) s += kernGrowth.calculate(DT,size[i],temp[i],fcnArgs)+kernMort.calculate(temp[i]);
+        return s;
+    }
+
+    private static double runSizeKernels(IBMKernels.Growth kernGrowth, IBMKernels.Rate kernMort,
+                                         double[] size, FunctionArgs fcnArgs) {
+        double s = 0;
+        for (int i=0;i<size.length;i++) s += kernGrowth.calculate(DT,size[i],0.0,fcnArgs)+kernMort.calculate(size[i]);
+        return s;
+    }
+
+    private static double runGeneric(IBMFunctionInterface fcnGrowth, IBMFunctionInterface fcnMort,
+                                     double[] size, FunctionArgs fcnArgs) {
+        double s = 0;
+        for (int i=0;i<size.length;i++) {
+            s += FunctionArgs.calculate(fcnGrowth,fcnArgs.set(DT/LifeStageInterface.DAY_SECS,size[i]))
+                +(Double)fcnMort.calculate(size[i]);
+        }
+        return s;
+    }
+
+    private static double runChains(IBMFunctionInterface fcnGrowth, IBMFunctionInterface fcnMort,
+                                    double[] size, double[] temp) {
+        double s = 0;
+        for (int i=0;i<size.length;i++) s += chainGrowth(fcnGrowth,size[i])+chainMortality(fcnMort,temp[i]);
+        return s;
+    }
+
+    /**
+     * Growth as the pelagic stages' updateSize() evaluated it.
+     */
+    private static double chainGrowth(IBMFunctionInterface fcn, double size) {
+        if (fcn instanceof ExponentialGrowthFunction){
+            size = (Double)fcn.calculate(new double[]{DT/LifeStageInterface.DAY_SECS,size});
+        } else
+        if (fcn instanceof LinearGrowthFunction){
+            size = (Double)fcn.calculate(new double[]{DT/LifeStageInterface.DAY_SECS,size});
+        } else
+        if (fcn instanceof ConstantFunction){
+            double rate = (Double)fcn.calculate(null);
+            size += rate*DT/LifeStageInterface.DAY_SECS;
+        }
+        return size;
+    }
+
+    /**
+     * Mortality rate as the pelagic stages' updateNum() evaluated it.
+     */
+    private static double chainMortality(IBMFunctionInterface fcn, double temperature) {
+        double mortalityRate = 0.0D;
+        if (fcn instanceof ConstantMortalityRate){
+            mortalityRate = (Double)fcn.calculate(null);
+        } else
+        if (fcn instanceof TemperatureDependentMortalityRate_Houde1989){
+            mortalityRate = (Double)fcn.calculate(temperature);
+        }
+        return mortalityRate;
+    }
+}
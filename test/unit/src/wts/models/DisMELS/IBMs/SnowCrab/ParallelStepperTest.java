@@ -0,0 +1,149 @@
+/*
+ * ParallelStepperTest.java
+ *
+ * Created on October 18, 2026
+ *
+ */
+
+package wts.models.DisMELS.IBMs.SnowCrab;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Checks that stepping a population with ParallelStepper gives the same
+ * trajectories serially (1 thread) and in parallel (several threads) for the
+ * same seed.
+ *
+ * The individuals are random walkers (proxies for LifeStageInterface) that
+ * draw their steps as the stages do: through a CounterRandom, which draws from
+ * the StageRandom stream set by the stepper when counter-based draws are
+ * turned off, as in the first two tests.
+ *
+ * @author William Stockhausen
+ */
+public class ParallelStepperTest {
+
+    private static final long SEED = 20261018L;
+    private static final int N_INDIVS = 1000;
+    private static final int N_STEPS = 50;
+    private static final double DT = 3600.0;
+
+    @Before
+    public void setUp() {
+        ParallelStepper.setThreadSafetyVerified(true);//the walkers share no state
+    }
+
+    @After
+    public void tearDown() {
+        ParallelStepper.setThreadSafetyVerified(false);
+        CounterRandom.setEnabled(true);//the default
+        ParameterSnapshots.setShared(true);//turned off by the parallel steppers
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testParallelSteppingRequiresVerification() {
+        ParallelStepper.setThreadSafetyVerified(false);
+        new ParallelStepper(4,16,SEED);
+    }
+
+    @Test
+    public void testSerialAndParallelTrajectoriesAreIdentical() {
+        CounterRandom.setEnabled(false);//use the stepper's streams
+        double[][] serial   = run(1,16);
+        double[][] parallel = run(4,16);
+        for (int s=0;s<N_STEPS;s++) assertArrayEquals("step "+s,serial[s],parallel[s],0.0);
+    }
+
+    @Test
+    public void testRepeatedParallelRunsAreIdentical() {
+        CounterRandom.setEnabled(false);//use the stepper's streams
+        double[][] run1 = run(4,16);
+        double[][] run2 = run(4,16);
+        for (int s=0;s<N_STEPS;s++) assertArrayEquals("step "+s,run1[s],run2[s],0.0);
+    }
+
+    @Test
+    public void testCounterBasedTrajectoriesDoNotDependOnThreadsOrChunks() {
+        CounterRandom.setEnabled(true);
+        CounterRandom.setSeed(SEED);
+        double[][] serial   = run(1,1000);
+        double[][] parallel = run(4,7);
+        for (int s=0;s<N_STEPS;s++) assertArrayEquals("step "+s,serial[s],parallel[s],0.0);
+    }
+
+    /**
+     * Steps a new population of walkers and returns their positions after each step.
+     */
+    private static double[][] run(int nThreads, int chunkSize) {
+        List<LifeStageInterface> lhss = new ArrayList<>(N_INDIVS);
+        List<Walker> walkers = new ArrayList<>(N_INDIVS);
+        for (int i=0;i<N_INDIVS;i++) {
+            Walker w = new Walker(i+1);
+            walkers.add(w);
+            lhss.add((LifeStageInterface) Proxy.newProxyInstance(LifeStageInterface.class.getClassLoader(),
+                                                                 new Class[]{LifeStageInterface.class},w));
+        }
+        double[][] xs = new double[N_STEPS][N_INDIVS];
+        ParallelStepper stepper = new ParallelStepper(nThreads,chunkSize,SEED);
+        try {
+            for (int s=0;s<N_STEPS;s++) {
+                stepper.step(lhss,DT);
+                for (int i=0;i<N_INDIVS;i++) xs[s][i] = walkers.get(i).x;
+            }
+        } finally {
+            stepper.shutdown();
+        }
+        assertEquals(N_STEPS,stepper.getStepCount());
+        return xs;
+    }
+
+    /**
+     * A random walker. Only isActive(), step() and getID() do anything.
+     */
+    private static class Walker implements InvocationHandler {
+        private final long id;
+        private final CounterRandom rand = new CounterRandom();
+        private double time = 0.0;
+        private double x = 0.0;
+
+        Walker(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "isActive":
+                    return true;
+                case "getID":
+                    return id;
+                case "step":
+                    double dt = (Double) args[0];
+                    x += rand.at(id,time).computeNormalVariate()+rand.computeUniformVariate(0.0,1.0);
+                    time += dt;
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy==args[0];
+                case "toString":
+                    return "Walker "+id;
+            }
+            Class<?> c = method.getReturnType();
+            if (c==boolean.class) return false;
+            if (c==double.class)  return 0.0;
+            if (c==long.class)    return 0L;
+            if (c==int.class)     return 0;
+            return null;
+        }
+    }
+}